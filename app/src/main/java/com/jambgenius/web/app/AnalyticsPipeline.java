@@ -0,0 +1,357 @@
+package com.jambgenius.web.app;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.os.Build;
+import android.provider.Settings;
+import android.util.Log;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Native analytics collection for the page. Events are appended to a bounded
+ * on-disk buffer and uploaded in gzip batches once a batch is full or old enough,
+ * preferring moments when the radio is already up or the network is unmetered.
+ * All buffer I/O happens on a single worker thread.
+ */
+class AnalyticsPipeline {
+    private static final String TAG = "JambGenius-Analytics";
+    private static final String BUFFER_FILE = "analytics/events.jsonl";
+    static final int MAX_BUFFER_BYTES = 256 * 1024;
+    static final int BATCH_SIZE = 50;
+    static final int MAX_UPLOAD_EVENTS = 200;
+    static final long MAX_BATCH_AGE_MS = 15 * 60 * 1000L;
+    static final long FORCE_UPLOAD_AGE_MS = 60 * 60 * 1000L;
+    static final long MAX_EVENT_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+    private static final long MIN_RETRY_DELAY_MS = 30 * 1000L;
+    private static final long MAX_RETRY_DELAY_MS = 30 * 60 * 1000L;
+
+    private final ConnectivityManager connectivityManager;
+    private final String endpoint;
+    private final String deviceId;
+    private final File bufferFile;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ConnectivityManager.OnNetworkActiveListener networkActiveListener;
+
+    // Written only on the executor thread; volatile so getStats() can read them from the bridge
+    private volatile int bufferedEvents;
+    private volatile long bufferedBytes;
+    private volatile int droppedEvents;
+    private volatile int uploadedEvents;
+
+    // Guarded by the executor thread
+    private long oldestEventTime;
+    private boolean waitingForRadio;
+    private long retryDelayMs;
+    private long retryAt;
+
+    AnalyticsPipeline(Context context, ConnectivityManager connectivityManager, String endpoint) {
+        this.connectivityManager = connectivityManager;
+        this.endpoint = endpoint;
+        this.deviceId = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
+        this.bufferFile = new File(context.getFilesDir(), BUFFER_FILE);
+        this.networkActiveListener = new ConnectivityManager.OnNetworkActiveListener() {
+            @Override
+            public void onNetworkActive() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        waitingForRadio = false;
+                        stopWaitingForRadio();
+                        maybeUpload(true);
+                    }
+                });
+            }
+        };
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                scanBuffer();
+            }
+        });
+    }
+
+    /** Queues an event; {@code lowPriority} events are the first to go when the buffer is full. */
+    void track(final String name, final String propertiesJson, final boolean lowPriority) {
+        final long now = System.currentTimeMillis();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(name, propertiesJson, lowPriority, now);
+                maybeUpload(false);
+            }
+        });
+    }
+
+    /** Uploads whatever is buffered at the next good opportunity, regardless of batch size. */
+    Future<?> flush() {
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (bufferedEvents > 0) {
+                    maybeUpload(true);
+                }
+            }
+        });
+    }
+
+    void shutdown() {
+        stopWaitingForRadio();
+        executor.shutdown();
+    }
+
+    String getStats() {
+        try {
+            JSONObject stats = new JSONObject();
+            stats.put("buffered", bufferedEvents);
+            stats.put("bufferedBytes", bufferedBytes);
+            stats.put("uploaded", uploadedEvents);
+            stats.put("dropped", droppedEvents);
+            return stats.toString();
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+
+    private void scanBuffer() {
+        bufferedEvents = 0;
+        bufferedBytes = bufferFile.length();
+        oldestEventTime = 0;
+        for (String line : readLines(Integer.MAX_VALUE)) {
+            bufferedEvents++;
+            if (oldestEventTime == 0) {
+                oldestEventTime = eventTime(line);
+            }
+        }
+    }
+
+    private void append(String name, String propertiesJson, boolean lowPriority, long time) {
+        String line;
+        try {
+            JSONObject event = new JSONObject();
+            event.put("n", name);
+            event.put("t", time);
+            if (propertiesJson != null && !propertiesJson.isEmpty()) {
+                event.put("p", new JSONObject(propertiesJson));
+            }
+            line = event.toString() + "\n";
+        } catch (Exception e) {
+            Log.w(TAG, "Dropping malformed event " + name);
+            droppedEvents++;
+            return;
+        }
+
+        int size = line.getBytes().length;
+        if (bufferedBytes + size > MAX_BUFFER_BYTES) {
+            if (lowPriority) {
+                droppedEvents++;
+                return;
+            }
+            trimOldest(size);
+        }
+
+        File dir = bufferFile.getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(bufferFile, true), "UTF-8");
+            try {
+                writer.write(line);
+            } finally {
+                writer.close();
+            }
+            bufferedEvents++;
+            bufferedBytes += size;
+            if (oldestEventTime == 0) oldestEventTime = time;
+        } catch (IOException e) {
+            droppedEvents++;
+            Log.w(TAG, "Failed to buffer event", e);
+        }
+    }
+
+    /** Drops the oldest quarter of the buffer (or more, until {@code needed} bytes fit). */
+    private void trimOldest(int needed) {
+        List<String> lines = readLines(Integer.MAX_VALUE);
+        long target = MAX_BUFFER_BYTES * 3L / 4 - needed;
+        long size = bufferedBytes;
+        int drop = 0;
+        while (drop < lines.size() && size > target) {
+            size -= lines.get(drop).getBytes().length + 1;
+            drop++;
+        }
+        droppedEvents += drop;
+        rewrite(lines.subList(drop, lines.size()));
+    }
+
+    private void maybeUpload(boolean force) {
+        if (bufferedEvents == 0) return;
+        long now = System.currentTimeMillis();
+        long age = oldestEventTime == 0 ? 0 : now - oldestEventTime;
+        if (!force && bufferedEvents < BATCH_SIZE && age < MAX_BATCH_AGE_MS) return;
+        if (!force && now < retryAt) return;
+
+        if (!isGoodTimeToUpload() && age < FORCE_UPLOAD_AGE_MS) {
+            waitForRadio();
+            return;
+        }
+
+        while (bufferedEvents > 0) {
+            if (!uploadBatch()) {
+                // Back off so a dead link doesn't cost a connection attempt per event
+                retryDelayMs = retryDelayMs == 0 ? MIN_RETRY_DELAY_MS : Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+                retryAt = System.currentTimeMillis() + retryDelayMs;
+                return;
+            }
+            retryDelayMs = 0;
+            retryAt = 0;
+        }
+    }
+
+    private boolean isGoodTimeToUpload() {
+        if (connectivityManager == null) return true;
+        if (!connectivityManager.isActiveNetworkMetered()) return true;
+        return connectivityManager.isDefaultNetworkActive();
+    }
+
+    private void waitForRadio() {
+        if (waitingForRadio || connectivityManager == null) return;
+        waitingForRadio = true;
+        connectivityManager.addDefaultNetworkActiveListener(networkActiveListener);
+    }
+
+    private void stopWaitingForRadio() {
+        if (connectivityManager != null) {
+            try {
+                connectivityManager.removeDefaultNetworkActiveListener(networkActiveListener);
+            } catch (Exception e) {
+                // Not registered
+            }
+        }
+    }
+
+    private boolean uploadBatch() {
+        List<String> lines = readLines(Integer.MAX_VALUE);
+        int count = Math.min(lines.size(), MAX_UPLOAD_EVENTS);
+        long cutoff = System.currentTimeMillis() - MAX_EVENT_AGE_MS;
+
+        StringBuilder body = new StringBuilder(count * 96);
+        body.append("{\"device\":").append(JSONObject.quote(deviceId != null ? deviceId : ""))
+            .append(",\"platform\":\"android\",\"sdk\":").append(Build.VERSION.SDK_INT)
+            .append(",\"events\":[");
+        int included = 0;
+        for (int i = 0; i < count; i++) {
+            String line = lines.get(i);
+            if (eventTime(line) < cutoff) {
+                droppedEvents++;
+                continue;
+            }
+            if (included > 0) body.append(',');
+            body.append(line);
+            included++;
+        }
+        body.append("]}");
+
+        boolean consumed;
+        if (included == 0) {
+            consumed = true;
+        } else {
+            try {
+                int code = GzipUploader.post(endpoint, body.toString(), null);
+                if (code >= 200 && code < 300) {
+                    uploadedEvents += included;
+                    consumed = true;
+                } else if (isEndpointMissing(code)) {
+                    // A missing or misrouted collector says nothing about the events; keep them and back off
+                    Log.w(TAG, "Collector endpoint returned " + code + ", keeping batch");
+                    consumed = false;
+                } else if (code >= 400 && code < 500 && code != 408 && code != 429) {
+                    // The collector will never accept this batch
+                    Log.w(TAG, "Collector rejected batch with " + code + ", dropping");
+                    droppedEvents += included;
+                    consumed = true;
+                } else {
+                    consumed = false;
+                }
+            } catch (IOException e) {
+                consumed = false;
+            }
+        }
+
+        if (consumed) {
+            rewrite(lines.subList(count, lines.size()));
+        }
+        return consumed;
+    }
+
+    private static boolean isEndpointMissing(int code) {
+        return code == 404 || code == 405 || code == 410;
+    }
+
+    private List<String> readLines(int limit) {
+        if (!bufferFile.exists()) return Collections.emptyList();
+        List<String> lines = new ArrayList<>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(bufferFile), "UTF-8"));
+            try {
+                String line;
+                while (lines.size() < limit && (line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) lines.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read event buffer", e);
+        }
+        return lines;
+    }
+
+    private void rewrite(List<String> lines) {
+        File temp = new File(bufferFile.getPath() + ".tmp");
+        long size = 0;
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+            try {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                    size += line.getBytes().length + 1;
+                }
+            } finally {
+                writer.close();
+            }
+            if (!temp.renameTo(bufferFile)) {
+                throw new IOException("rename failed");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to rewrite event buffer", e);
+            temp.delete();
+            return;
+        }
+        bufferedEvents = lines.size();
+        bufferedBytes = size;
+        oldestEventTime = lines.isEmpty() ? 0 : eventTime(lines.get(0));
+    }
+
+    private static long eventTime(String line) {
+        try {
+            return new JSONObject(line).optLong("t", 0);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package com.jambgenius.web.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.provider.Settings;
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of practice answers and attempts made in the app. Records
+ * carry a monotonically increasing sequence number, are written in fsync'd batches
+ * and uploaded in idempotent batches once the device is back online. The journal
+ * also keeps running totals so offline views can show scores and history.
+ */
+class AnswerJournal {
+    private static final String TAG = "JambGenius-Journal";
+    private static final String JOURNAL_FILE = "journal/answers.log";
+    private static final String PREFS_NAME = "JambGeniusJournal";
+    private static final String KEY_ACKED_SEQ = "acked_seq";
+    private static final String KEY_INSTALL_ID = "install_id";
+    private static final String KEY_COMPACTED = "compacted_totals";
+    // Returned as ANDROID_ID by a batch of old devices, so it identifies nothing
+    private static final String BROKEN_ANDROID_ID = "9774d56d682e549c";
+    static final String TYPE_ANSWER = "answer";
+    static final String TYPE_ATTEMPT = "attempt";
+    static final int FSYNC_BATCH_SIZE = 32;
+    static final long FSYNC_DELAY_MS = 2000;
+    static final int SYNC_BATCH_SIZE = 100;
+    static final int MAX_RETAINED_RECORDS = 5000;
+    private static final int RECENT_ATTEMPTS = 10;
+
+    private final SharedPreferences prefs;
+    private final String syncUrl;
+    private final String deviceId;
+    private final String installId;
+    private final File journalFile;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushPending();
+        }
+    };
+
+    // Guarded by this
+    private final List<String> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private long lastSeq;
+    private long ackedSeq;
+    private Totals totals = new Totals();
+    private boolean loaded;
+    private boolean syncing;
+    private boolean repairTail;
+
+    /** Running answer counts and recent attempts; also the persisted form of compacted-away records. */
+    private static class Totals {
+        long seq;
+        int answered;
+        int correct;
+        final Map<String, int[]> subjects = new HashMap<>();
+        final ArrayDeque<JSONObject> recentAttempts = new ArrayDeque<>();
+
+        void add(JSONObject record) {
+            seq = Math.max(seq, record.optLong("seq"));
+            JSONObject data = record.optJSONObject("d");
+            if (data == null) return;
+
+            if (TYPE_ANSWER.equals(record.optString("type"))) {
+                boolean isCorrect = data.optBoolean("correct", false);
+                answered++;
+                if (isCorrect) correct++;
+
+                String subject = data.optString("subject", "general");
+                int[] counts = subjects.get(subject);
+                if (counts == null) {
+                    counts = new int[2];
+                    subjects.put(subject, counts);
+                }
+                counts[0]++;
+                if (isCorrect) counts[1]++;
+            } else if (TYPE_ATTEMPT.equals(record.optString("type"))) {
+                recentAttempts.addFirst(record);
+                while (recentAttempts.size() > RECENT_ATTEMPTS) {
+                    recentAttempts.removeLast();
+                }
+            }
+        }
+
+        String toJson() throws Exception {
+            JSONObject json = new JSONObject();
+            json.put("seq", seq);
+            json.put("answered", answered);
+            json.put("correct", correct);
+            JSONObject subjectJson = new JSONObject();
+            for (Map.Entry<String, int[]> entry : subjects.entrySet()) {
+                subjectJson.put(entry.getKey(), new JSONArray().put(entry.getValue()[0]).put(entry.getValue()[1]));
+            }
+            json.put("subjects", subjectJson);
+            JSONArray attempts = new JSONArray();
+            // Oldest first so replaying them through add() keeps the order
+            Iterator<JSONObject> oldestFirst = recentAttempts.descendingIterator();
+            while (oldestFirst.hasNext()) {
+                attempts.put(oldestFirst.next());
+            }
+            json.put("attempts", attempts);
+            return json.toString();
+        }
+
+        static Totals fromJson(String value) {
+            Totals restored = new Totals();
+            if (value == null) return restored;
+            try {
+                JSONObject json = new JSONObject(value);
+                restored.seq = json.optLong("seq");
+                restored.answered = json.optInt("answered");
+                restored.correct = json.optInt("correct");
+                JSONObject subjectJson = json.optJSONObject("subjects");
+                if (subjectJson != null) {
+                    Iterator<String> names = subjectJson.keys();
+                    while (names.hasNext()) {
+                        String name = names.next();
+                        JSONArray counts = subjectJson.getJSONArray(name);
+                        restored.subjects.put(name, new int[] { counts.getInt(0), counts.getInt(1) });
+                    }
+                }
+                JSONArray attempts = json.optJSONArray("attempts");
+                for (int i = 0; attempts != null && i < attempts.length(); i++) {
+                    restored.add(attempts.getJSONObject(i));
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Discarding unreadable compacted totals");
+                return new Totals();
+            }
+            return restored;
+        }
+    }
+
+    AnswerJournal(Context context, String syncUrl) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.syncUrl = syncUrl;
+        this.deviceId = resolveDeviceId(context);
+        this.installId = resolveInstallId(prefs);
+        this.journalFile = new File(context.getFilesDir(), JOURNAL_FILE);
+        this.ackedSeq = prefs.getLong(KEY_ACKED_SEQ, 0);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    /** ANDROID_ID, or null where it is missing or the known-broken value. Informational only. */
+    private static String resolveDeviceId(Context context) {
+        String androidId = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
+        return androidId != null && !androidId.isEmpty() && !BROKEN_ANDROID_ID.equals(androidId) ? androidId : null;
+    }
+
+    /**
+     * Identifies this journal's sequence space. ANDROID_ID survives a reinstall or clear
+     * data while sequence numbers restart at 1, so keying on it would collide with the
+     * previous install's ranges; this id is wiped together with the journal instead.
+     */
+    private static String resolveInstallId(SharedPreferences prefs) {
+        String installId = prefs.getString(KEY_INSTALL_ID, null);
+        if (installId == null) {
+            installId = UUID.randomUUID().toString();
+            prefs.edit().putString(KEY_INSTALL_ID, installId).commit();
+        }
+        return installId;
+    }
+
+    /** Runs on the executor: parses the journal without holding the lock, then publishes the totals. */
+    private void load() {
+        boolean partial = endsWithPartialLine();
+        Totals restored = Totals.fromJson(prefs.getString(KEY_COMPACTED, null));
+        long compactedSeq = restored.seq;
+        for (String line : readRecords()) {
+            try {
+                JSONObject record = new JSONObject(line);
+                // Already counted in the compacted totals if a compaction was interrupted
+                if (record.getLong("seq") <= compactedSeq) continue;
+                restored.add(record);
+            } catch (Exception e) {
+                // Torn final line from a crash mid-write
+            }
+        }
+
+        synchronized (this) {
+            repairTail = partial;
+            lastSeq = restored.seq;
+            totals = restored;
+            loaded = true;
+            notifyAll();
+        }
+    }
+
+    private void awaitLoaded() {
+        boolean interrupted = false;
+        while (!loaded) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    long recordAnswer(String dataJson) {
+        return append(TYPE_ANSWER, dataJson);
+    }
+
+    long recordAttempt(String dataJson) {
+        return append(TYPE_ATTEMPT, dataJson);
+    }
+
+    private synchronized long append(String type, String dataJson) {
+        // Sequence numbers continue from the journal on disk
+        awaitLoaded();
+        JSONObject record = new JSONObject();
+        try {
+            record.put("seq", lastSeq + 1);
+            record.put("type", type);
+            record.put("t", System.currentTimeMillis());
+            record.put("d", new JSONObject(dataJson != null && !dataJson.isEmpty() ? dataJson : "{}"));
+        } catch (Exception e) {
+            Log.w(TAG, "Rejected malformed " + type + " record");
+            return -1;
+        }
+
+        lastSeq++;
+        pending.add(record.toString());
+        totals.add(record);
+
+        if (pending.size() >= FSYNC_BATCH_SIZE) {
+            if (scheduledFlush != null) scheduledFlush.cancel(false);
+            scheduledFlush = null;
+            executor.execute(flushTask);
+        } else if (scheduledFlush == null) {
+            scheduledFlush = executor.schedule(flushTask, FSYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+        return lastSeq;
+    }
+
+    /** Writes buffered records and fsyncs them in one go. */
+    Future<?> flush() {
+        return executor.submit(flushTask);
+    }
+
+    private void flushPending() {
+        List<String> batch;
+        synchronized (this) {
+            scheduledFlush = null;
+            if (pending.isEmpty()) return;
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+        boolean repair = repairTail;
+
+        File dir = journalFile.getParentFile();
+        if (dir != null && !dir.exists()) dir.mkdirs();
+        try {
+            FileOutputStream out = new FileOutputStream(journalFile, true);
+            try {
+                StringBuilder chunk = new StringBuilder(batch.size() * 128);
+                if (repair) {
+                    chunk.append('\n');
+                }
+                for (String line : batch) {
+                    chunk.append(line).append('\n');
+                }
+                out.write(chunk.toString().getBytes("UTF-8"));
+                out.flush();
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            repairTail = false;
+        } catch (IOException e) {
+            Log.e(TAG, "Journal write failed, keeping records in memory", e);
+            synchronized (this) {
+                pending.addAll(0, batch);
+            }
+        }
+    }
+
+    /** Uploads unsynced records in sequence-numbered batches. Safe to call repeatedly. */
+    Future<?> sync() {
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (AnswerJournal.this) {
+                    if (syncing) return;
+                    syncing = true;
+                }
+                try {
+                    flushPending();
+                    while (uploadBatch()) {
+                        // Keep going while batches are accepted
+                    }
+                    compact();
+                } finally {
+                    synchronized (AnswerJournal.this) {
+                        syncing = false;
+                    }
+                }
+            }
+        });
+    }
+
+    private boolean uploadBatch() {
+        long acked;
+        synchronized (this) {
+            acked = ackedSeq;
+        }
+
+        JSONArray records = new JSONArray();
+        long firstSeq = 0;
+        long batchLastSeq = 0;
+        for (String line : readRecords()) {
+            try {
+                JSONObject record = new JSONObject(line);
+                long seq = record.getLong("seq");
+                if (seq <= acked) continue;
+                if (firstSeq == 0) firstSeq = seq;
+                batchLastSeq = seq;
+                records.put(record);
+                if (records.length() >= SYNC_BATCH_SIZE) break;
+            } catch (Exception e) {
+                // Skip unreadable record
+            }
+        }
+        if (records.length() == 0) return false;
+
+        try {
+            JSONObject body = new JSONObject();
+            body.put("install", installId);
+            if (deviceId != null) body.put("device", deviceId);
+            body.put("firstSeq", firstSeq);
+            body.put("lastSeq", batchLastSeq);
+            body.put("records", records);
+
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Idempotency-Key", installId + ":" + firstSeq + "-" + batchLastSeq);
+
+            int code = GzipUploader.post(syncUrl, body.toString(), headers);
+            // 409 means the server already holds this range
+            if ((code >= 200 && code < 300) || code == 409) {
+                synchronized (this) {
+                    ackedSeq = Math.max(ackedSeq, batchLastSeq);
+                    prefs.edit().putLong(KEY_ACKED_SEQ, ackedSeq).apply();
+                }
+                return true;
+            }
+            Log.w(TAG, "Journal sync rejected with " + code);
+        } catch (Exception e) {
+            Log.w(TAG, "Journal sync failed, will retry: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /** Drops the oldest synced records once the journal grows past its retention limit. */
+    private void compact() {
+        List<String> lines = readRecords();
+        if (lines.size() <= MAX_RETAINED_RECORDS) return;
+
+        long acked;
+        synchronized (this) {
+            acked = ackedSeq;
+        }
+        int drop = 0;
+        int excess = lines.size() - MAX_RETAINED_RECORDS;
+        Totals compacted = Totals.fromJson(prefs.getString(KEY_COMPACTED, null));
+        while (drop < excess) {
+            JSONObject record;
+            try {
+                record = new JSONObject(lines.get(drop));
+            } catch (Exception e) {
+                drop++;
+                continue;
+            }
+            if (record.optLong("seq") > acked) break;
+            compacted.add(record);
+            drop++;
+        }
+        if (drop == 0) return;
+
+        // Totals first: if we die before the rewrite, load() skips records they already cover
+        try {
+            if (!prefs.edit().putString(KEY_COMPACTED, compacted.toJson()).commit()) return;
+        } catch (Exception e) {
+            return;
+        }
+
+        File temp = new File(journalFile.getPath() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                StringBuilder chunk = new StringBuilder();
+                for (int i = drop; i < lines.size(); i++) {
+                    chunk.append(lines.get(i)).append('\n');
+                }
+                out.write(chunk.toString().getBytes("UTF-8"));
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(journalFile)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            temp.delete();
+        }
+    }
+
+    synchronized int getPendingSyncCount() {
+        awaitLoaded();
+        return (int) (lastSeq - ackedSeq);
+    }
+
+    synchronized String getSummary() {
+        awaitLoaded();
+        try {
+            JSONObject summary = new JSONObject();
+            summary.put("answered", totals.answered);
+            summary.put("correct", totals.correct);
+            summary.put("accuracy", totals.answered == 0 ? 0 : Math.round(totals.correct * 1000.0 / totals.answered) / 10.0);
+            summary.put("unsynced", Math.max(0, lastSeq - ackedSeq));
+
+            JSONObject subjects = new JSONObject();
+            for (Map.Entry<String, int[]> entry : totals.subjects.entrySet()) {
+                JSONObject counts = new JSONObject();
+                counts.put("answered", entry.getValue()[0]);
+                counts.put("correct", entry.getValue()[1]);
+                subjects.put(entry.getKey(), counts);
+            }
+            summary.put("subjects", subjects);
+
+            JSONArray attempts = new JSONArray();
+            for (JSONObject attempt : totals.recentAttempts) {
+                JSONObject item = new JSONObject(attempt.optJSONObject("d").toString());
+                item.put("t", attempt.optLong("t"));
+                attempts.put(item);
+            }
+            summary.put("recentAttempts", attempts);
+            return summary.toString();
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+
+    synchronized int getAnsweredCount() {
+        awaitLoaded();
+        return totals.answered;
+    }
+
+    synchronized int getCorrectCount() {
+        awaitLoaded();
+        return totals.correct;
+    }
+
+    void shutdown() {
+        flush();
+        executor.shutdown();
+    }
+
+    private List<String> readRecords() {
+        if (!journalFile.exists()) return Collections.emptyList();
+        List<String> lines = new ArrayList<>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) lines.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read journal", e);
+        }
+        return lines;
+    }
+
+    private boolean endsWithPartialLine() {
+        long length = journalFile.length();
+        if (length == 0) return false;
+        try {
+            RandomAccessFile file = new RandomAccessFile(journalFile, "r");
+            try {
+                file.seek(length - 1);
+                return file.read() != '\n';
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
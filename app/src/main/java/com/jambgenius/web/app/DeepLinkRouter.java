@@ -0,0 +1,103 @@
+package com.jambgenius.web.app;
+
+import android.net.Uri;
+import android.webkit.WebView;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+
+/**
+ * Turns jambgenius:// links and notification deep links into site routes and
+ * navigates to them inside the running SPA (history push) instead of loading a
+ * new page. Links that arrive before the page is ready are queued and replayed
+ * once it is. Must be used from the UI thread.
+ */
+class DeepLinkRouter {
+    static final String SCHEME = "jambgenius";
+    private static final int MAX_QUEUED = 8;
+
+    private final String host;
+    private final ArrayDeque<String> queue = new ArrayDeque<>();
+    private WebView webView;
+    private boolean pageReady;
+
+    DeepLinkRouter(String baseUrl) {
+        this.host = Uri.parse(baseUrl).getHost();
+    }
+
+    void attach(WebView webView) {
+        this.webView = webView;
+    }
+
+    /**
+     * Maps a link to a site route ("/path?query#fragment"), or null if it is not
+     * one of ours. Accepts jambgenius://path, site URLs and bare paths.
+     */
+    String toRoute(String link) {
+        if (link == null || link.isEmpty()) return null;
+        if (link.startsWith("/")) return link;
+
+        Uri uri = Uri.parse(link);
+        String path;
+        if (SCHEME.equals(uri.getScheme())) {
+            // jambgenius://exam/physics -> /exam/physics
+            String authority = uri.getAuthority();
+            path = "/" + (authority != null ? authority : "") + (uri.getPath() != null ? uri.getPath() : "");
+        } else if (("https".equals(uri.getScheme()) || "http".equals(uri.getScheme())) && host != null && host.equals(uri.getHost())) {
+            path = uri.getPath() == null || uri.getPath().isEmpty() ? "/" : uri.getPath();
+        } else {
+            return null;
+        }
+
+        StringBuilder route = new StringBuilder(path.replaceAll("/{2,}", "/"));
+        if (uri.getEncodedQuery() != null) route.append('?').append(uri.getEncodedQuery());
+        if (uri.getEncodedFragment() != null) route.append('#').append(uri.getEncodedFragment());
+        return route.toString();
+    }
+
+    /** Routes a link now if the page is live, otherwise queues it. Returns false if the link isn't ours. */
+    boolean route(String link) {
+        String token = tokenOf(link);
+        String route = token == null ? toRoute(link) : null;
+        if (token == null && route == null) return false;
+
+        String script = token != null ?
+            "if (typeof window.handleAuthCallback === 'function') { window.handleAuthCallback(" + JSONObject.quote(token) + "); }" :
+            navigateScript(route);
+
+        if (pageReady && webView != null) {
+            webView.evaluateJavascript(script, null);
+        } else {
+            if (queue.size() >= MAX_QUEUED) queue.removeFirst();
+            queue.addLast(script);
+        }
+        return true;
+    }
+
+    private static String tokenOf(String link) {
+        if (link == null || !link.startsWith(SCHEME + "://")) return null;
+        return Uri.parse(link).getQueryParameter("token");
+    }
+
+    private static String navigateScript(String route) {
+        return "(function(r){" +
+            "if (typeof window.jambGeniusNavigate === 'function') { window.jambGeniusNavigate(r); return; }" +
+            "if (location.pathname + location.search + location.hash === r) return;" +
+            "history.pushState({}, '', r);" +
+            "window.dispatchEvent(new PopStateEvent('popstate', { state: {} }));" +
+            "})(" + JSONObject.quote(route) + ");";
+    }
+
+    void onPageStarted() {
+        pageReady = false;
+    }
+
+    /** Marks a real site page as live and replays anything queued while it loaded. */
+    void onPageReady() {
+        pageReady = true;
+        if (webView == null) return;
+        while (!queue.isEmpty()) {
+            webView.evaluateJavascript(queue.removeFirst(), null);
+        }
+    }
+}
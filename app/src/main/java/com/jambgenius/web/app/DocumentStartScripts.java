@@ -0,0 +1,102 @@
+package com.jambgenius.web.app;
+
+import android.webkit.WebView;
+import androidx.webkit.ScriptHandler;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Registers the app-detection, native fetch and session bootstrap scripts to run
+ * at document start on the site origin, so the page's own startup code already
+ * sees them. The session script is versioned and only re-registered when the session changes.
+ * Must be used from the UI thread.
+ */
+class DocumentStartScripts {
+    private static final String APP_DETECTION_SCRIPT =
+        "try { localStorage.setItem('isInApp', 'true'); } catch (e) {}" +
+        "window.isJambGeniusApp = true;";
+
+    // Promise API over NativeFetch's message listener. Replies arrive as {id, result}
+    // on the listener object itself, so they only ever reach the document that asked.
+    // A no-op where the listener is not injected.
+    static final String NATIVE_FETCH_SCRIPT =
+        "(function() {" +
+        "  var channel = window." + NativeFetch.LISTENER_NAME + ";" +
+        "  if (!channel || window.nativeFetch) return;" +
+        "  var pending = {}, next = 0;" +
+        "  channel.onmessage = function(event) {" +
+        "    var reply = JSON.parse(event.data);" +
+        "    var resolve = pending[reply.id];" +
+        "    if (resolve) { delete pending[reply.id]; resolve(reply.result); }" +
+        "  };" +
+        "  function send(message) {" +
+        "    return new Promise(function(resolve) {" +
+        "      message.id = 'nf' + (++next);" +
+        "      pending[message.id] = resolve;" +
+        "      channel.postMessage(JSON.stringify(message));" +
+        "    });" +
+        "  }" +
+        "  window.nativeFetch = function(method, url, headers, body) {" +
+        "    return send({type: 'fetch', method: method, url: url, headers: headers || {}, body: body == null ? null : body});" +
+        "  };" +
+        "  window.nativeFetchBatch = function(requests) {" +
+        "    return send({type: 'batch', requests: requests});" +
+        "  };" +
+        "})();";
+
+    private final WebView webView;
+    private final Set<String> allowedOrigins;
+    private final boolean supported;
+    private ScriptHandler appDetectionHandler;
+    private ScriptHandler nativeFetchHandler;
+    private ScriptHandler sessionHandler;
+    private int sessionVersion;
+
+    DocumentStartScripts(WebView webView, String origin) {
+        this.webView = webView;
+        this.allowedOrigins = Collections.singleton(origin);
+        this.supported = WebViewFeatures.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT);
+    }
+
+    boolean isSupported() {
+        return supported;
+    }
+
+    void install(String cachedUser) {
+        if (!supported) return;
+        if (appDetectionHandler == null) {
+            appDetectionHandler = WebViewCompat.addDocumentStartJavaScript(webView, APP_DETECTION_SCRIPT, allowedOrigins);
+        }
+        if (nativeFetchHandler == null) {
+            nativeFetchHandler = WebViewCompat.addDocumentStartJavaScript(webView, NATIVE_FETCH_SCRIPT, allowedOrigins);
+        }
+        updateSession(cachedUser);
+    }
+
+    void updateSession(String cachedUser) {
+        if (!supported) return;
+        String user = cachedUser != null ? cachedUser : "";
+        int version = user.hashCode();
+        if (sessionHandler != null && version == sessionVersion) return;
+
+        if (sessionHandler != null) {
+            sessionHandler.remove();
+            sessionHandler = null;
+        }
+        sessionVersion = version;
+        if (user.isEmpty()) return;
+
+        String script = "window.jambGeniusSessionVersion = " + version + ";" +
+            "window.jambGeniusCachedUser = " + JSONObject.quote(user) + ";" +
+            "document.addEventListener('DOMContentLoaded', function() {" +
+            "  if (typeof window.restoreOfflineSession === 'function') {" +
+            "    window.restoreOfflineSession(window.jambGeniusCachedUser);" +
+            "  }" +
+            "});";
+        sessionHandler = WebViewCompat.addDocumentStartJavaScript(webView, script, allowedOrigins);
+    }
+}
@@ -0,0 +1,354 @@
+package com.jambgenius.web.app;
+
+import android.os.SystemClock;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs JAMB-format mock exams from the local {@link QuestionBank}: Use of English
+ * plus up to three other subjects, questions and options shuffled from a seed so a
+ * paper can be reproduced. Paper state lives in flat primitive arrays indexed by
+ * paper position; question text is read from disk only when a question is shown.
+ * The bank's whole-subject indexes are only used while a paper is assembled.
+ */
+class ExamEngine {
+    static final String ENGLISH = "english";
+    static final int ENGLISH_QUESTIONS = 60;
+    static final int SUBJECT_QUESTIONS = 40;
+    static final int MAX_OTHER_SUBJECTS = 3;
+    static final int POINTS_PER_SUBJECT = 100;
+    static final int DURATION_MINUTES = 120;
+    private static final int NO_ANSWER = -1;
+
+    private final QuestionBank bank;
+    private final AnswerJournal journal;
+
+    // Paper state, guarded by this; all arrays are indexed by paper position
+    private String[] subjectNames;
+    private long[] subjectFileLength;  // file version each subject's offsets were taken from
+    private long[] subjectFileModified;
+    private int[] subjectStart;
+    private byte[] subjectOf;
+    private int[] sourceIndex;
+    private long[] offsets;
+    private int[] lengths;
+    private String[] questionIds;      // null where the source question had no id
+    private byte[] optionOrder;      // MAX_OPTIONS slots per question: shown position -> source option
+    private byte[] correctShown;
+    private byte[] answers;
+    private short[] topicOf;
+    private String[] topicNames;
+    private byte[] topicSubject;
+    private long seed;
+    private long startedAt;
+    private boolean active;
+
+    ExamEngine(QuestionBank bank, AnswerJournal journal) {
+        this.bank = bank;
+        this.journal = journal;
+    }
+
+    /**
+     * Assembles a paper. {@code subjectsJson} lists the non-English subjects; English is
+     * always included. A seed of 0 picks a fresh one. Returns the paper layout, or
+     * {"error": ...} if English or every other subject is missing.
+     */
+    synchronized String start(String subjectsJson, long requestedSeed) {
+        List<QuestionBank.Index> chosen = new ArrayList<>();
+        QuestionBank.Index english = bank.index(ENGLISH);
+        if (english == null) return error("No Use of English questions saved");
+        chosen.add(english);
+
+        try {
+            JSONArray requested = new JSONArray(subjectsJson != null && !subjectsJson.isEmpty() ? subjectsJson : "[]");
+            for (int i = 0; i < requested.length() && chosen.size() <= MAX_OTHER_SUBJECTS; i++) {
+                String name = QuestionBank.normalizeSubject(requested.optString(i));
+                if (name == null || ENGLISH.equals(name) || containsSubject(chosen, name)) continue;
+                QuestionBank.Index index = bank.index(name);
+                if (index != null) chosen.add(index);
+            }
+        } catch (Exception e) {
+            return error("Invalid subject list");
+        }
+        if (chosen.size() < 2) return error("No saved questions for the chosen subjects");
+
+        // Keep generated seeds within 48 bits so they survive a round trip through a JS number
+        seed = requestedSeed != 0 ? requestedSeed : (System.nanoTime() & 0xFFFFFFFFFFFFL) + 1;
+        Random random = new Random(seed);
+        QuestionBank.Index[] subjects = chosen.toArray(new QuestionBank.Index[0]);
+        subjectNames = new String[subjects.length];
+        subjectFileLength = new long[subjects.length];
+        subjectFileModified = new long[subjects.length];
+        subjectStart = new int[subjects.length + 1];
+
+        int total = 0;
+        for (int s = 0; s < subjects.length; s++) {
+            subjectNames[s] = subjects[s].subject;
+            subjectFileLength[s] = subjects[s].fileLength;
+            subjectFileModified[s] = subjects[s].fileModified;
+            subjectStart[s] = total;
+            total += Math.min(subjects[s].size(), s == 0 ? ENGLISH_QUESTIONS : SUBJECT_QUESTIONS);
+        }
+        subjectStart[subjects.length] = total;
+
+        subjectOf = new byte[total];
+        sourceIndex = new int[total];
+        offsets = new long[total];
+        lengths = new int[total];
+        questionIds = new String[total];
+        optionOrder = new byte[total * QuestionBank.MAX_OPTIONS];
+        correctShown = new byte[total];
+        answers = new byte[total];
+        topicOf = new short[total];
+        Arrays.fill(answers, (byte) NO_ANSWER);
+
+        Map<String, Integer> topicIds = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        byte[] options = new byte[QuestionBank.MAX_OPTIONS];
+
+        for (int s = 0; s < subjects.length; s++) {
+            QuestionBank.Index index = subjects[s];
+            int count = subjectStart[s + 1] - subjectStart[s];
+            // Partial Fisher-Yates: the first `count` slots become a random sample in random order
+            int[] pool = new int[index.size()];
+            for (int i = 0; i < pool.length; i++) pool[i] = i;
+            for (int i = 0; i < count; i++) {
+                int j = i + random.nextInt(pool.length - i);
+                int swap = pool[i];
+                pool[i] = pool[j];
+                pool[j] = swap;
+            }
+
+            for (int i = 0; i < count; i++) {
+                int position = subjectStart[s] + i;
+                int source = pool[i];
+                subjectOf[position] = (byte) s;
+                sourceIndex[position] = source;
+                offsets[position] = index.offsets[source];
+                lengths[position] = index.lengths[source];
+                questionIds[position] = index.ids[source];
+
+                int optionCount = index.optionCounts[source];
+                for (int o = 0; o < optionCount; o++) options[o] = (byte) o;
+                for (int o = optionCount - 1; o > 0; o--) {
+                    int j = random.nextInt(o + 1);
+                    byte swap = options[o];
+                    options[o] = options[j];
+                    options[j] = swap;
+                }
+                int base = position * QuestionBank.MAX_OPTIONS;
+                for (int o = 0; o < QuestionBank.MAX_OPTIONS; o++) {
+                    optionOrder[base + o] = o < optionCount ? options[o] : NO_ANSWER;
+                    if (o < optionCount && options[o] == index.answers[source]) {
+                        correctShown[position] = (byte) o;
+                    }
+                }
+
+                String topicKey = s + "|" + index.topics[source];
+                Integer topic = topicIds.get(topicKey);
+                if (topic == null) {
+                    topic = names.size();
+                    topicIds.put(topicKey, topic);
+                    names.add(index.topics[source]);
+                    owners.add(s);
+                }
+                topicOf[position] = topic.shortValue();
+            }
+        }
+
+        topicNames = names.toArray(new String[0]);
+        topicSubject = new byte[owners.size()];
+        for (int t = 0; t < topicSubject.length; t++) topicSubject[t] = owners.get(t).byteValue();
+        startedAt = System.currentTimeMillis();
+        active = true;
+
+        try {
+            JSONObject paper = new JSONObject();
+            paper.put("seed", seed);
+            paper.put("total", total);
+            paper.put("durationMinutes", DURATION_MINUTES);
+            JSONArray sections = new JSONArray();
+            for (int s = 0; s < subjects.length; s++) {
+                JSONObject section = new JSONObject();
+                section.put("subject", subjectNames[s]);
+                section.put("start", subjectStart[s]);
+                section.put("count", subjectStart[s + 1] - subjectStart[s]);
+                sections.put(section);
+            }
+            paper.put("subjects", sections);
+            return paper.toString();
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+
+    private static boolean containsSubject(List<QuestionBank.Index> chosen, String name) {
+        for (QuestionBank.Index index : chosen) {
+            if (index.subject.equals(name)) return true;
+        }
+        return false;
+    }
+
+    /** Question at a paper position with options in shown order, or {"error": ...}. */
+    synchronized String question(int position) {
+        if (!active || position < 0 || position >= answers.length) return error("No such question");
+        int subject = subjectOf[position];
+        JSONObject source = bank.read(subjectNames[subject], subjectFileLength[subject],
+            subjectFileModified[subject], offsets[position], lengths[position]);
+        if (source == null) return error("Question bank changed, start a new exam");
+
+        try {
+            JSONArray sourceOptions = source.getJSONArray("o");
+            JSONArray shown = new JSONArray();
+            int base = position * QuestionBank.MAX_OPTIONS;
+            for (int o = 0; o < QuestionBank.MAX_OPTIONS && optionOrder[base + o] != NO_ANSWER; o++) {
+                shown.put(sourceOptions.getString(optionOrder[base + o]));
+            }
+
+            JSONObject question = new JSONObject();
+            question.put("index", position);
+            question.put("total", answers.length);
+            question.put("subject", subjectNames[subject]);
+            question.put("topic", topicNames[topicOf[position]]);
+            question.put("question", source.getString("q"));
+            question.put("options", shown);
+            question.put("selected", answers[position]);
+            return question.toString();
+        } catch (Exception e) {
+            return error("Unreadable question");
+        }
+    }
+
+    /** Records the shown option chosen at a position; -1 clears it. */
+    synchronized boolean answer(int position, int option) {
+        if (!active || position < 0 || position >= answers.length) return false;
+        if (option != NO_ANSWER &&
+            (option < 0 || option >= QuestionBank.MAX_OPTIONS || optionOrder[position * QuestionBank.MAX_OPTIONS + option] == NO_ANSWER)) {
+            return false;
+        }
+        answers[position] = (byte) option;
+        return true;
+    }
+
+    synchronized boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Grades the paper and ends it. Each subject is scaled to {@link #POINTS_PER_SUBJECT},
+     * so a full four-subject paper is out of 400. Answers and the attempt are journalled,
+     * and submitMicros covers all of it, journalling included.
+     */
+    synchronized String submit() {
+        if (!active) return error("No exam in progress");
+        long submitStart = SystemClock.elapsedRealtimeNanos();
+
+        int total = answers.length;
+        int[] subjectCorrect = new int[subjectNames.length];
+        int[] topicCorrect = new int[topicNames.length];
+        int[] topicTotal = new int[topicNames.length];
+        int answered = 0;
+        for (int i = 0; i < total; i++) {
+            int topic = topicOf[i];
+            topicTotal[topic]++;
+            if (answers[i] == NO_ANSWER) continue;
+            answered++;
+            if (answers[i] == correctShown[i]) {
+                subjectCorrect[subjectOf[i]]++;
+                topicCorrect[topic]++;
+            }
+        }
+        int score = 0;
+        int[] subjectScore = new int[subjectNames.length];
+        for (int s = 0; s < subjectNames.length; s++) {
+            int count = subjectStart[s + 1] - subjectStart[s];
+            subjectScore[s] = Math.round(subjectCorrect[s] * (float) POINTS_PER_SUBJECT / count);
+            score += subjectScore[s];
+        }
+
+        active = false;
+
+        try {
+            JSONObject result = new JSONObject();
+            result.put("seed", seed);
+            result.put("score", score);
+            result.put("maxScore", subjectNames.length * POINTS_PER_SUBJECT);
+            result.put("answered", answered);
+            result.put("total", total);
+            result.put("durationMs", System.currentTimeMillis() - startedAt);
+
+            JSONArray subjectResults = new JSONArray();
+            for (int s = 0; s < subjectNames.length; s++) {
+                JSONObject item = new JSONObject();
+                item.put("subject", subjectNames[s]);
+                item.put("correct", subjectCorrect[s]);
+                item.put("total", subjectStart[s + 1] - subjectStart[s]);
+                item.put("score", subjectScore[s]);
+                subjectResults.put(item);
+            }
+            result.put("subjects", subjectResults);
+
+            JSONArray topics = new JSONArray();
+            for (int t = 0; t < topicNames.length; t++) {
+                JSONObject item = new JSONObject();
+                item.put("subject", subjectNames[topicSubject[t]]);
+                item.put("topic", topicNames[t]);
+                item.put("correct", topicCorrect[t]);
+                item.put("total", topicTotal[t]);
+                topics.put(item);
+            }
+            result.put("topics", topics);
+
+            journal(result);
+            result.put("submitMicros", (SystemClock.elapsedRealtimeNanos() - submitStart) / 1000);
+            return result.toString();
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+
+    private void journal(JSONObject result) throws Exception {
+        if (journal == null) return;
+        for (int i = 0; i < answers.length; i++) {
+            if (answers[i] == NO_ANSWER) continue;
+            // Ids were copied at start(); reading each question back would hit disk per answer
+            String questionId = questionIds[i];
+            JSONObject answer = new JSONObject();
+            if (questionId != null) {
+                answer.put("questionId", questionId);
+            }
+            answer.put("subject", subjectNames[subjectOf[i]]);
+            answer.put("topic", topicNames[topicOf[i]]);
+            answer.put("questionIndex", sourceIndex[i]);
+            answer.put("correct", answers[i] == correctShown[i]);
+            answer.put("source", "offline-exam");
+            journal.recordAnswer(answer.toString());
+        }
+
+        JSONObject attempt = new JSONObject();
+        attempt.put("type", "mock-exam");
+        attempt.put("seed", seed);
+        attempt.put("score", result.getInt("score"));
+        attempt.put("maxScore", result.getInt("maxScore"));
+        attempt.put("answered", result.getInt("answered"));
+        attempt.put("durationMs", result.getLong("durationMs"));
+        attempt.put("subjects", result.getJSONArray("subjects"));
+        journal.recordAttempt(attempt.toString());
+    }
+
+    private static String error(String message) {
+        try {
+            return new JSONObject().put("error", message).toString();
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.jambgenius.web.app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/** Posts gzip-compressed JSON bodies; shared by the native upload pipelines. */
+final class GzipUploader {
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private GzipUploader() {
+    }
+
+    static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(body);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    /** Returns the HTTP status code; throws on transport failure. */
+    static int post(String url, String json, Map<String, String> headers) throws IOException {
+        byte[] payload = gzip(json.getBytes("UTF-8"));
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            conn.setRequestMethod("POST");
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(payload.length);
+            conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            conn.setRequestProperty("Content-Encoding", "gzip");
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    conn.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+
+            OutputStream out = conn.getOutputStream();
+            try {
+                out.write(payload);
+            } finally {
+                out.close();
+            }
+
+            int code = conn.getResponseCode();
+            InputStream body = code < 400 ? conn.getInputStream() : conn.getErrorStream();
+            if (body != null) {
+                // Drain so the connection can be reused
+                byte[] buffer = new byte[1024];
+                while (body.read(buffer) != -1) {
+                }
+                body.close();
+            }
+            return code;
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
+        }
+    }
+}
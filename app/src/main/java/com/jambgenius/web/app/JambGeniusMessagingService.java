@@ -28,10 +28,15 @@ public class JambGeniusMessagingService extends com.google.firebase.messaging.Fi
         
         String notificationType = remoteMessage.getData().get("type");
         String deepLink = remoteMessage.getData().get("deepLink");
+        String imageUrl = remoteMessage.getData().get("image");
+        if (imageUrl == null && remoteMessage.getNotification() != null && remoteMessage.getNotification().getImageUrl() != null) {
+            imageUrl = remoteMessage.getNotification().getImageUrl().toString();
+        }
+        String iconUrl = remoteMessage.getData().get("icon");
         
         android.util.Log.d(TAG, "Notification received: " + title + " - " + body);
         
-        sendNotification(title, body, clickAction, notificationType, deepLink);
+        sendNotification(title, body, clickAction, notificationType, deepLink, imageUrl, iconUrl);
     }
 
     @Override
@@ -58,7 +63,8 @@ public class JambGeniusMessagingService extends com.google.firebase.messaging.Fi
     }
 
     private void sendNotification(String title, String body, String clickAction, 
-                                   String notificationType, String deepLink) {
+                                   String notificationType, String deepLink,
+                                   String imageUrl, String iconUrl) {
         Intent intent = new Intent(this, MainActivity.class);
         intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
         
@@ -82,9 +88,11 @@ public class JambGeniusMessagingService extends com.google.firebase.messaging.Fi
             .setContentIntent(pendingIntent)
             .setPriority(NotificationCompat.PRIORITY_DEFAULT);
 
-        if (body.length() > 100) {
+        if (body.length() > 100 || "announcement".equals(notificationType)) {
             builder.setStyle(new NotificationCompat.BigTextStyle().bigText(body));
         }
+        
+        NotificationRenderer.getInstance(this).applyImages(builder, imageUrl, iconUrl, body);
 
         NotificationManager notificationManager = 
             (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
@@ -8,6 +8,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.graphics.Color;
 import android.net.ConnectivityManager;
 import android.net.Network;
 import android.net.NetworkCapabilities;
@@ -19,6 +20,7 @@ import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Message;
 import android.webkit.CookieManager;
 import android.webkit.DownloadListener;
 import android.webkit.JavascriptInterface;
@@ -26,11 +28,13 @@ import android.webkit.URLUtil;
 import android.webkit.WebChromeClient;
 import android.webkit.WebResourceError;
 import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.view.View;
 import android.view.WindowManager;
+import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 import android.widget.ProgressBar;
 import android.widget.TextView;
@@ -39,6 +43,8 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
+import java.io.File;
+
 public class MainActivity extends Activity {
     private WebView webView;
     private ProgressBar progressBar;
@@ -47,13 +53,20 @@ public class MainActivity extends Activity {
     private TextView retryText;
     
     private static final String TAG = "JambGenius";
-    private static final String BASE_URL = "https://jambgenius.vercel.app";
+    private static final String DEFAULT_BASE_URL = "https://jambgenius.vercel.app";
     private static final int PERMISSION_REQUEST_CODE = 100;
     private static final int FILE_PICKER_CODE = 101;
     private static final int VOICE_RECORD_CODE = 102;
     private static final String PREFS_NAME = "JambGeniusPrefs";
     private static final String KEY_USER_SESSION = "user_session";
     private static final String KEY_CACHED_USER = "cached_user";
+    private static final int PREFETCH_IDLE_DELAY_MS = 1500;
+    private static final String WATCHDOG_REPORT_FILE = "diagnostics/main-thread.json";
+
+    /** Site origin for the next launch; tests point it at a local server. Null means production. */
+    static String originOverride;
+    /** Tests turn this off to get the offline page on an offline launch whatever shell is bundled. */
+    static boolean bundledShellEnabled = true;
     
     private boolean isOffline = false;
     private boolean hasShownOfflinePage = false;
@@ -63,6 +76,27 @@ public class MainActivity extends Activity {
     private ConnectivityManager connectivityManager;
     private ConnectivityManager.NetworkCallback networkCallback;
     private BroadcastReceiver downloadReceiver;
+    private ShellAssetLoader shellAssetLoader;
+    private NavigationPrefetcher prefetcher;
+    private DocumentStartScripts documentStartScripts;
+    private AnalyticsPipeline analytics;
+    private AnswerJournal answerJournal;
+    private QuestionBank questionBank;
+    private ExamEngine examEngine;
+    private NativeFetch nativeFetch;
+    private ReconnectController reconnectController;
+    private TabManager tabManager;
+    private String baseUrl;
+    private DeepLinkRouter deepLinkRouter;
+    private final MainThreadWatchdog watchdog = new MainThreadWatchdog();
+    private final Runnable prefetchOnIdle = new Runnable() {
+        @Override
+        public void run() {
+            if (!isOffline && !hasShownOfflinePage) {
+                prefetcher.onIdle(webView);
+            }
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -72,7 +106,13 @@ public class MainActivity extends Activity {
         
         setContentView(R.layout.activity_main);
         
+        baseUrl = originOverride != null ? originOverride : DEFAULT_BASE_URL;
+        deepLinkRouter = new DeepLinkRouter(baseUrl);
         connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        analytics = new AnalyticsPipeline(this, connectivityManager, baseUrl + "/api/events");
+        answerJournal = new AnswerJournal(this, baseUrl + "/api/journal/sync");
+        questionBank = new QuestionBank(this);
+        examEngine = new ExamEngine(questionBank, answerJournal);
         
         initViews();
         setupWebView();
@@ -80,6 +120,29 @@ public class MainActivity extends Activity {
         setupOfflineBanner();
         
         loadWebsite();
+        handleIntent(getIntent());
+        
+        if (hasInternetConnection()) {
+            answerJournal.sync();
+        }
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        handleIntent(intent);
+    }
+
+    private void handleIntent(Intent intent) {
+        if (intent == null) return;
+        String link = intent.getStringExtra("deepLink");
+        if (link == null && Intent.ACTION_VIEW.equals(intent.getAction()) && intent.getData() != null) {
+            link = intent.getData().toString();
+        }
+        if (link != null) {
+            deepLinkRouter.route(link);
+        }
     }
 
     private void initViews() {
@@ -105,11 +168,43 @@ public class MainActivity extends Activity {
         settings.setGeolocationEnabled(true);
         settings.setSupportZoom(false);
         settings.setBuiltInZoomControls(false);
+        settings.setSupportMultipleWindows(true);
+        // Popups need a user gesture; TabManager refuses the rest
+        settings.setJavaScriptCanOpenWindowsAutomatically(false);
         
         setupModernCaching(settings);
         
+        shellAssetLoader = new ShellAssetLoader(this, baseUrl);
+        shellAssetLoader.setOffline(!hasInternetConnection());
+        prefetcher = new NavigationPrefetcher(this, connectivityManager, baseUrl);
+        reconnectController = new ReconnectController(this, baseUrl, new Runnable() {
+            @Override
+            public void run() {
+                if (!isOffline && hasInternetConnection()) {
+                    resumeFromOffline(false);
+                }
+            }
+        });
+        nativeFetch = new NativeFetch(this, baseUrl);
+        nativeFetch.attach(webView, baseUrl);
+        deepLinkRouter.attach(webView);
+        tabManager = new TabManager(this, (FrameLayout) findViewById(R.id.web_container), new TabManager.Host() {
+            @Override
+            public void configureTab(WebView tab) {
+                configureChildWebView(tab);
+            }
+
+            @Override
+            public boolean handleExternalUrl(String url) {
+                return openOutsideWebView(url);
+            }
+        });
+        
         webView.addJavascriptInterface(new AppBridge(), "AndroidApp");
         webView.addJavascriptInterface(new AuthBridge(), "AndroidAuth");
+        
+        documentStartScripts = new DocumentStartScripts(webView, baseUrl);
+        documentStartScripts.install(getSharedPreferences(PREFS_NAME, MODE_PRIVATE).getString(KEY_CACHED_USER, ""));
 
         webView.setWebViewClient(new JambGeniusWebViewClient());
         webView.setWebChromeClient(new JambGeniusWebChromeClient());
@@ -117,6 +212,36 @@ public class MainActivity extends Activity {
         setupDownloadListener();
     }
 
+    private void configureChildWebView(WebView child) {
+        // Child windows get the main page's cookies and settings but not the app bridges
+        WebSettings settings = child.getSettings();
+        WebSettings main = webView.getSettings();
+        settings.setJavaScriptEnabled(true);
+        settings.setDomStorageEnabled(true);
+        settings.setDatabaseEnabled(true);
+        settings.setUseWideViewPort(true);
+        settings.setLoadWithOverviewMode(true);
+        settings.setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
+        settings.setUserAgentString(main.getUserAgentString());
+        settings.setCacheMode(main.getCacheMode());
+        settings.setSupportMultipleWindows(true);
+        settings.setJavaScriptCanOpenWindowsAutomatically(false);
+        settings.setSupportZoom(true);
+        settings.setBuiltInZoomControls(true);
+        settings.setDisplayZoomControls(false);
+        
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            CookieManager.getInstance().setAcceptThirdPartyCookies(child, true);
+        }
+        child.setBackgroundColor(Color.WHITE);
+        child.setDownloadListener(new DownloadListener() {
+            @Override
+            public void onDownloadStart(String url, String userAgent, String contentDisposition, String mimetype, long contentLength) {
+                handleDownload(url, contentDisposition, mimetype);
+            }
+        });
+    }
+
     private void setupModernCaching(WebSettings settings) {
         if (hasInternetConnection()) {
             settings.setCacheMode(WebSettings.LOAD_DEFAULT);
@@ -141,7 +266,12 @@ public class MainActivity extends Activity {
             @Override
             public void onRefresh() {
                 if (hasInternetConnection()) {
-                    webView.reload();
+                    if (hasShownOfflinePage) {
+                        swipeRefreshLayout.setRefreshing(false);
+                        resumeFromOffline(true);
+                    } else {
+                        webView.reload();
+                    }
                 } else {
                     swipeRefreshLayout.setRefreshing(false);
                     showOfflineBanner(true);
@@ -154,6 +284,9 @@ public class MainActivity extends Activity {
             @Override
             public void onScrollChange(View v, int scrollX, int scrollY, int oldScrollX, int oldScrollY) {
                 swipeRefreshLayout.setEnabled(scrollY == 0);
+                if (!hasShownOfflinePage) {
+                    reconnectController.onScrollChanged(scrollY);
+                }
             }
         });
     }
@@ -202,18 +335,31 @@ public class MainActivity extends Activity {
 
     private void onNetworkAvailable() {
         isOffline = false;
+        shellAssetLoader.setOffline(false);
         showOfflineBanner(false);
+        answerJournal.sync();
         
-        if (hasShownOfflinePage && isPageLoaded) {
-            Toast.makeText(this, "Back online! Refreshing...", Toast.LENGTH_SHORT).show();
+        if (isPageLoaded) {
+            resumeFromOffline(false);
+        }
+    }
+
+    private void resumeFromOffline(boolean userInitiated) {
+        boolean wasShowingOfflinePage = hasShownOfflinePage;
+        if (reconnectController.reconnect(webView, wasShowingOfflinePage, userInitiated)) {
+            // Let a failed resume fall back to the offline page again
             hasShownOfflinePage = false;
-            webView.loadUrl(BASE_URL);
+            Toast.makeText(this, "Back online! Resuming...", Toast.LENGTH_SHORT).show();
         }
     }
 
     private void onNetworkLost() {
+        // onLost fires for any network; on a Wi-Fi to cellular handover the other one is already up
+        if (hasInternetConnection()) return;
         isOffline = true;
+        shellAssetLoader.setOffline(true);
         showOfflineBanner(true);
+        reconnectController.onOffline(webView);
     }
 
     private void setupOfflineBanner() {
@@ -222,7 +368,7 @@ public class MainActivity extends Activity {
             public void onClick(View v) {
                 if (hasInternetConnection()) {
                     showOfflineBanner(false);
-                    webView.reload();
+                    resumeFromOffline(true);
                 } else {
                     Toast.makeText(MainActivity.this, "Still offline. Please check your connection.", Toast.LENGTH_SHORT).show();
                 }
@@ -306,37 +452,54 @@ public class MainActivity extends Activity {
     private void loadWebsite() {
         if (hasInternetConnection()) {
             showOfflineBanner(false);
-            webView.loadUrl(BASE_URL);
+            webView.loadUrl(baseUrl);
+        } else if (bundledShellEnabled && shellAssetLoader.hasShell()) {
+            // The bundled shell serves the site root offline; a main-frame error still lands on the offline page
+            isOffline = true;
+            showOfflineBanner(true);
+            reconnectController.onOffline(webView);
+            webView.loadUrl(baseUrl);
         } else {
             showOfflinePage();
         }
     }
 
+    /** Handles links that must not load in a WebView; returns false for pages we keep in-app. */
+    private boolean openOutsideWebView(String url) {
+        if (url.startsWith(DeepLinkRouter.SCHEME + "://")) {
+            deepLinkRouter.route(url);
+            return true;
+        }
+        
+        if (url.startsWith("tel:") || url.startsWith("mailto:") || url.startsWith("whatsapp:")) {
+            Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
+            startActivity(intent);
+            return true;
+        }
+        
+        if (!url.startsWith(baseUrl) && !url.contains("jambgenius") && !url.contains("vercel.app") && 
+            !url.contains("google.com") && !url.contains("gstatic.com") &&
+            !url.contains("firebaseapp.com") && !url.contains("paystack")) {
+            Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
+            startActivity(intent);
+            return true;
+        }
+        
+        return false;
+    }
+
     private class JambGeniusWebViewClient extends WebViewClient {
         @Override
         public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
-            String url = request.getUrl().toString();
-            
-            if (url.startsWith("jambgenius://")) {
-                handleDeepLink(url);
-                return true;
-            }
-            
-            if (url.startsWith("tel:") || url.startsWith("mailto:") || url.startsWith("whatsapp:")) {
-                Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                startActivity(intent);
-                return true;
-            }
-            
-            if (!url.contains("jambgenius") && !url.contains("vercel.app") && 
-                !url.contains("google.com") && !url.contains("gstatic.com") &&
-                !url.contains("firebaseapp.com") && !url.contains("paystack")) {
-                Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                startActivity(intent);
-                return true;
+            return openOutsideWebView(request.getUrl().toString());
+        }
+
+        @Override
+        public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+            if (!"GET".equals(request.getMethod())) {
+                return null;
             }
-            
-            return false;
+            return shellAssetLoader.shouldInterceptRequest(request.getUrl());
         }
 
         @Override
@@ -344,18 +507,45 @@ public class MainActivity extends Activity {
             super.onPageStarted(view, url, favicon);
             progressBar.setVisibility(View.VISIBLE);
             progressBar.setProgress(0);
+            mainHandler.removeCallbacks(prefetchOnIdle);
+            deepLinkRouter.onPageStarted();
+        }
+
+        @Override
+        public void doUpdateVisitedHistory(WebView view, String url, boolean isReload) {
+            super.doUpdateVisitedHistory(view, url, isReload);
+            reconnectController.onRouteChanged(url);
+            if (!isReload) {
+                prefetcher.recordNavigation(url);
+                schedulePrefetch();
+            }
         }
 
         @Override
         public void onPageFinished(WebView view, String url) {
             super.onPageFinished(view, url);
+            watchdog.enterSection("onPageFinished");
             progressBar.setVisibility(View.GONE);
             swipeRefreshLayout.setRefreshing(false);
-            hasShownOfflinePage = false;
+            if (reconnectController.isRealPage(url)) {
+                hasShownOfflinePage = false;
+                deepLinkRouter.onPageReady();
+            }
             isPageLoaded = true;
+            reconnectController.onPageFinished(view, url);
+            
+            if (!documentStartScripts.isSupported()) {
+                restoreUserSession();
+                injectAppDetection();
+                if (reconnectController.isRealPage(url)) {
+                    view.evaluateJavascript(DocumentStartScripts.NATIVE_FETCH_SCRIPT, null);
+                }
+            }
             
-            restoreUserSession();
-            injectAppDetection();
+            if (!isOffline) {
+                shellAssetLoader.revalidate();
+            }
+            schedulePrefetch();
         }
 
         @Override
@@ -370,6 +560,7 @@ public class MainActivity extends Activity {
         @Override
         public void onProgressChanged(WebView view, int newProgress) {
             super.onProgressChanged(view, newProgress);
+            watchdog.enterSection("onProgressChanged");
             progressBar.setProgress(newProgress);
             
             if (newProgress == 100) {
@@ -381,6 +572,17 @@ public class MainActivity extends Activity {
                 }, 200);
             }
         }
+
+        @Override
+        public boolean onCreateWindow(WebView view, boolean isDialog, boolean isUserGesture, Message resultMsg) {
+            watchdog.enterSection("onCreateWindow");
+            return tabManager.openWindow(isUserGesture, resultMsg);
+        }
+    }
+
+    private void schedulePrefetch() {
+        mainHandler.removeCallbacks(prefetchOnIdle);
+        mainHandler.postDelayed(prefetchOnIdle, PREFETCH_IDLE_DELAY_MS);
     }
 
     private void injectAppDetection() {
@@ -393,26 +595,37 @@ public class MainActivity extends Activity {
     private class AppBridge {
         @JavascriptInterface
         public void saveUserSession(String sessionData) {
+            long start = System.nanoTime();
             SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
             prefs.edit().putString(KEY_USER_SESSION, sessionData).apply();
+            watchdog.recordBridgeCall("saveUserSession", start);
         }
         
         @JavascriptInterface
         public String getUserSession() {
+            long start = System.nanoTime();
             SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-            return prefs.getString(KEY_USER_SESSION, "");
+            String session = prefs.getString(KEY_USER_SESSION, "");
+            watchdog.recordBridgeCall("getUserSession", start);
+            return session;
         }
         
         @JavascriptInterface
         public void saveCachedUser(String userData) {
+            long start = System.nanoTime();
             SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
             prefs.edit().putString(KEY_CACHED_USER, userData).apply();
+            updateSessionScript(userData);
+            watchdog.recordBridgeCall("saveCachedUser", start);
         }
         
         @JavascriptInterface
         public String getCachedUser() {
+            long start = System.nanoTime();
             SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-            return prefs.getString(KEY_CACHED_USER, "");
+            String user = prefs.getString(KEY_CACHED_USER, "");
+            watchdog.recordBridgeCall("getCachedUser", start);
+            return user;
         }
         
         @JavascriptInterface
@@ -424,16 +637,157 @@ public class MainActivity extends Activity {
         public void clearSession() {
             SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
             prefs.edit().clear().apply();
+            updateSessionScript("");
         }
 
         @JavascriptInterface
         public void showToast(String message) {
-            mainHandler.post(new Runnable() {
+            mainHandler.post(watchdog.named("AndroidApp.showToast", new Runnable() {
                 @Override
                 public void run() {
                     Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
                 }
-            });
+            }));
+        }
+
+        @JavascriptInterface
+        public long recordAnswer(String answerJson) {
+            long start = System.nanoTime();
+            long seq = answerJournal.recordAnswer(answerJson);
+            watchdog.recordBridgeCall("recordAnswer", start);
+            return seq;
+        }
+
+        @JavascriptInterface
+        public long recordAttempt(String attemptJson) {
+            long start = System.nanoTime();
+            long seq = answerJournal.recordAttempt(attemptJson);
+            watchdog.recordBridgeCall("recordAttempt", start);
+            return seq;
+        }
+
+        @JavascriptInterface
+        public int storeQuestions(String subject, String questionsJson) {
+            return questionBank.store(subject, questionsJson);
+        }
+
+        @JavascriptInterface
+        public String getOfflineSubjects() {
+            return questionBank.listSubjects();
+        }
+
+        @JavascriptInterface
+        public String startOfflineExam(String subjectsJson, String seed) {
+            long value = 0;
+            try {
+                value = Long.parseLong(seed);
+            } catch (NumberFormatException e) {
+                // Fresh paper
+            }
+            return examEngine.start(subjectsJson, value);
+        }
+
+        @JavascriptInterface
+        public String getExamQuestion(int index) {
+            long start = System.nanoTime();
+            String question = examEngine.question(index);
+            watchdog.recordBridgeCall("getExamQuestion", start);
+            return question;
+        }
+
+        @JavascriptInterface
+        public boolean answerExamQuestion(int index, int option) {
+            long start = System.nanoTime();
+            boolean accepted = examEngine.answer(index, option);
+            watchdog.recordBridgeCall("answerExamQuestion", start);
+            return accepted;
+        }
+
+        @JavascriptInterface
+        public String submitOfflineExam() {
+            long start = System.nanoTime();
+            String result = examEngine.submit();
+            watchdog.recordBridgeCall("submitOfflineExam", start);
+            return result;
+        }
+
+        @JavascriptInterface
+        public String getJournalSummary() {
+            long start = System.nanoTime();
+            String summary = answerJournal.getSummary();
+            watchdog.recordBridgeCall("getJournalSummary", start);
+            return summary;
+        }
+
+        @JavascriptInterface
+        public int getPendingSyncCount() {
+            return answerJournal.getPendingSyncCount();
+        }
+
+        @JavascriptInterface
+        public void trackEvent(String name, String propertiesJson) {
+            analytics.track(name, propertiesJson, false);
+        }
+
+        @JavascriptInterface
+        public void trackLowPriorityEvent(String name, String propertiesJson) {
+            analytics.track(name, propertiesJson, true);
+        }
+
+        @JavascriptInterface
+        public void flushEvents() {
+            analytics.flush();
+        }
+
+        @JavascriptInterface
+        public String getAnalyticsStats() {
+            return analytics.getStats();
+        }
+
+        @JavascriptInterface
+        public String getPrefetchStats() {
+            return prefetcher.getStats();
+        }
+
+        @JavascriptInterface
+        public void saveResumeState(final String stateJson) {
+            mainHandler.post(watchdog.named("AndroidApp.saveResumeState", new Runnable() {
+                @Override
+                public void run() {
+                    reconnectController.saveAppState(stateJson);
+                }
+            }));
+        }
+
+        @JavascriptInterface
+        public String getPerformanceReport() {
+            return watchdog.exportReport();
+        }
+
+        @JavascriptInterface
+        public String getFetchStats() {
+            return nativeFetch.getStats();
+        }
+
+        @JavascriptInterface
+        public String getTabStats() {
+            return tabManager.getStats();
+        }
+
+        @JavascriptInterface
+        public void retryConnection() {
+            mainHandler.post(watchdog.named("AndroidApp.retryConnection", new Runnable() {
+                @Override
+                public void run() {
+                    if (hasInternetConnection()) {
+                        showOfflineBanner(false);
+                        resumeFromOffline(true);
+                    } else {
+                        webView.evaluateJavascript("window.onRetryFailed && window.onRetryFailed()", null);
+                        Toast.makeText(MainActivity.this, "Still offline. Please check your connection.", Toast.LENGTH_SHORT).show();
+                    }
+                }
+            }));
         }
 
         @JavascriptInterface
@@ -456,12 +810,12 @@ public class MainActivity extends Activity {
 
         @JavascriptInterface
         public void setAuthToken(String token) {
-            mainHandler.post(new Runnable() {
+            mainHandler.post(watchdog.named("AndroidAuth.setAuthToken", new Runnable() {
                 @Override
                 public void run() {
                     webView.evaluateJavascript("javascript:window.authToken = '" + token + "'", null);
                 }
-            });
+            }));
         }
 
         @JavascriptInterface
@@ -482,6 +836,15 @@ public class MainActivity extends Activity {
         }
     }
     
+    private void updateSessionScript(final String cachedUser) {
+        mainHandler.post(watchdog.named("updateSessionScript", new Runnable() {
+            @Override
+            public void run() {
+                documentStartScripts.updateSession(cachedUser);
+            }
+        }));
+    }
+
     private void restoreUserSession() {
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
         String cachedUser = prefs.getString(KEY_CACHED_USER, "");
@@ -493,14 +856,6 @@ public class MainActivity extends Activity {
         }
     }
 
-    private void handleDeepLink(String url) {
-        Uri uri = Uri.parse(url);
-        String token = uri.getQueryParameter("token");
-        if (token != null) {
-            webView.evaluateJavascript("javascript:window.handleAuthCallback('" + token + "')", null);
-        }
-    }
-
     private void checkAndRequestPermission(String permission, String secondaryPermission, int requestCode) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             if (ContextCompat.checkSelfPermission(this, permission) != PackageManager.PERMISSION_GRANTED ||
@@ -566,6 +921,7 @@ public class MainActivity extends Activity {
     private void showOfflinePage() {
         if (hasShownOfflinePage) return;
         hasShownOfflinePage = true;
+        watchdog.enterSection("showOfflinePage");
         isOffline = true;
         showOfflineBanner(true);
         
@@ -592,10 +948,15 @@ public class MainActivity extends Activity {
         String greeting = hasSession && !userName.isEmpty() ? 
             "<p class='greeting'>Welcome back, " + userName + "!</p>" : "";
         
+        int answered = answerJournal.getAnsweredCount();
+        String historyText = answered > 0 ?
+            answered + " questions practised, " + Math.round(answerJournal.getCorrectCount() * 100.0 / answered) + "% correct" :
+            "View your practice history";
+        
         String offlineContent = hasSession ? 
             "<div class='feature-list'>" +
             "<div class='feature-item'><span class='icon'>📚</span><span>Review your bookmarked questions</span></div>" +
-            "<div class='feature-item'><span class='icon'>📊</span><span>View your practice history</span></div>" +
+            "<div class='feature-item'><span class='icon'>📊</span><span>" + historyText + "</span></div>" +
             "<div class='feature-item'><span class='icon'>💡</span><span>Study offline with saved content</span></div>" +
             "</div>" +
             "<button class='offline-practice-btn' onclick='startOfflinePractice()'>Practice Offline</button>" :
@@ -629,28 +990,125 @@ public class MainActivity extends Activity {
             ".tip { background: rgba(255,255,255,0.1); border-radius: 12px; padding: 16px; margin-top: 24px; max-width: 320px; text-align: center; }" +
             ".tip-icon { font-size: 20px; margin-bottom: 8px; }" +
             ".tip-text { font-size: 13px; opacity: 0.9; line-height: 1.4; }" +
-            ".loading { display: none; flex-direction: column; align-items: center; justify-content: center; min-height: 100vh; }" +
-            ".spinner { width: 40px; height: 40px; border: 4px solid rgba(255,255,255,0.3); border-top-color: white; border-radius: 50%; animation: spin 1s linear infinite; }" +
-            "@keyframes spin { to { transform: rotate(360deg); } }" +
+            ".exam { display: none; width: 100%; max-width: 480px; }" +
+            ".exam-meta { font-size: 13px; opacity: 0.85; margin: 6px 0; }" +
+            ".exam-question { font-size: 17px; font-weight: 600; line-height: 1.5; margin: 12px 0 16px; }" +
+            ".exam-option { display: block; width: 100%; text-align: left; background: rgba(255,255,255,0.15); color: white; border: 1px solid rgba(255,255,255,0.4); border-radius: 10px; padding: 12px; margin-bottom: 10px; font-size: 15px; }" +
+            ".exam-option.selected { background: white; color: #2c5282; }" +
+            ".exam-nav { display: flex; gap: 12px; margin-top: 8px; }" +
+            ".exam-nav-btn { flex: 1; background: white; color: #2c5282; border: none; padding: 12px; border-radius: 10px; font-size: 14px; font-weight: 600; }" +
+            ".exam-nav-btn:disabled { opacity: 0.5; }" +
             "</style>" +
             "<script>" +
             "function retryConnection() { " +
             "  var btn = document.querySelector('.retry-btn');" +
             "  btn.textContent = 'Checking...';" +
             "  btn.disabled = true;" +
-            "  setTimeout(function() { location.reload(); }, 500);" +
+            "  setTimeout(function() { " +
+            "    if (window.AndroidApp) { AndroidApp.retryConnection(); } else { location.reload(); }" +
+            "  }, 500);" +
             "}" +
-            "function startOfflinePractice() { " +
-            "  document.querySelector('.loading').style.display = 'flex';" +
+            "function onRetryFailed() { " +
+            "  var btn = document.querySelector('.retry-btn');" +
+            "  btn.textContent = 'Try Again';" +
+            "  btn.disabled = false;" +
+            "}" +
+            "function el(tag, cls, text) { " +
+            "  var e = document.createElement(tag);" +
+            "  if (cls) e.className = cls;" +
+            "  if (text != null) e.textContent = text;" +
+            "  return e;" +
+            "}" +
+            "function examView() { " +
+            "  var v = document.querySelector('.exam');" +
+            "  v.innerHTML = '';" +
             "  document.querySelector('.main-content').style.display = 'none';" +
-            "  setTimeout(function() { location.reload(); }, 1500);" +
+            "  v.style.display = 'block';" +
+            "  window.scrollTo(0, 0);" +
+            "  return v;" +
+            "}" +
+            "function leaveExam() { " +
+            "  document.querySelector('.exam').style.display = 'none';" +
+            "  document.querySelector('.main-content').style.display = 'flex';" +
+            "}" +
+            "function backButton(label) { " +
+            "  var b = el('button', 'retry-btn', label);" +
+            "  b.onclick = leaveExam;" +
+            "  return b;" +
+            "}" +
+            "function startOfflinePractice() { " +
+            "  var subjects = JSON.parse(AndroidApp.getOfflineSubjects());" +
+            "  var others = subjects.filter(function(s) { return s.subject !== 'english'; });" +
+            "  var v = examView();" +
+            "  if (others.length === 0 || others.length === subjects.length) { " +
+            "    v.appendChild(el('p', 'status-message', 'No saved questions yet. Open practice while online to save Use of English and your subjects for offline use.'));" +
+            "    v.appendChild(backButton('Back'));" +
+            "    return;" +
+            "  }" +
+            "  v.appendChild(el('h2', 'status-title', 'Use of English + up to 3 subjects'));" +
+            "  others.forEach(function(s, i) { " +
+            "    var label = el('label', 'exam-option');" +
+            "    var box = document.createElement('input');" +
+            "    box.type = 'checkbox';" +
+            "    box.value = s.subject;" +
+            "    box.checked = i < 3;" +
+            "    box.onchange = function() { if (document.querySelectorAll('.exam input:checked').length > 3) box.checked = false; };" +
+            "    label.appendChild(box);" +
+            "    label.appendChild(document.createTextNode(' ' + s.subject + ' (' + s.count + ' questions)'));" +
+            "    v.appendChild(label);" +
+            "  });" +
+            "  var start = el('button', 'retry-btn', 'Start Mock Exam');" +
+            "  start.onclick = function() { " +
+            "    var chosen = [].map.call(document.querySelectorAll('.exam input:checked'), function(b) { return b.value; });" +
+            "    var paper = JSON.parse(AndroidApp.startOfflineExam(JSON.stringify(chosen), '0'));" +
+            "    if (paper.error) { AndroidApp.showToast(paper.error); return; }" +
+            "    showQuestion(0);" +
+            "  };" +
+            "  v.appendChild(start);" +
+            "  v.appendChild(backButton('Back'));" +
+            "}" +
+            "function showQuestion(i) { " +
+            "  var q = JSON.parse(AndroidApp.getExamQuestion(i));" +
+            "  if (q.error) { AndroidApp.showToast(q.error); return; }" +
+            "  var v = examView();" +
+            "  v.appendChild(el('p', 'exam-meta', q.subject.toUpperCase() + ' · ' + (i + 1) + ' / ' + q.total));" +
+            "  v.appendChild(el('p', 'exam-question', q.question));" +
+            "  q.options.forEach(function(text, o) { " +
+            "    var b = el('button', 'exam-option' + (q.selected === o ? ' selected' : ''), String.fromCharCode(65 + o) + '. ' + text);" +
+            "    b.onclick = function() { AndroidApp.answerExamQuestion(i, q.selected === o ? -1 : o); showQuestion(i); };" +
+            "    v.appendChild(b);" +
+            "  });" +
+            "  var nav = el('div', 'exam-nav');" +
+            "  var prev = el('button', 'exam-nav-btn', 'Previous');" +
+            "  prev.disabled = i === 0;" +
+            "  prev.onclick = function() { showQuestion(i - 1); };" +
+            "  var next = el('button', 'exam-nav-btn', i + 1 < q.total ? 'Next' : 'Submit');" +
+            "  next.onclick = function() { if (i + 1 < q.total) { showQuestion(i + 1); } else { submitExam(); } };" +
+            "  nav.appendChild(prev);" +
+            "  nav.appendChild(next);" +
+            "  v.appendChild(nav);" +
+            "  var submit = el('button', 'offline-practice-btn', 'Submit Exam');" +
+            "  submit.onclick = submitExam;" +
+            "  v.appendChild(submit);" +
+            "}" +
+            "function submitExam() { " +
+            "  if (!confirm('Submit your exam now?')) return;" +
+            "  var r = JSON.parse(AndroidApp.submitOfflineExam());" +
+            "  if (r.error) { AndroidApp.showToast(r.error); return; }" +
+            "  var v = examView();" +
+            "  v.appendChild(el('h2', 'status-title', 'Score: ' + r.score + ' / ' + r.maxScore));" +
+            "  v.appendChild(el('p', 'exam-meta', r.answered + ' of ' + r.total + ' answered'));" +
+            "  r.subjects.forEach(function(s) { v.appendChild(el('p', 'exam-meta', s.subject + ': ' + s.correct + '/' + s.total + ' (' + s.score + ')')); });" +
+            "  var weak = r.topics.sort(function(a, b) { return a.correct / a.total - b.correct / b.total; }).slice(0, 5);" +
+            "  if (weak.length) { " +
+            "    v.appendChild(el('p', 'exam-question', 'Topics to revise'));" +
+            "    weak.forEach(function(t) { v.appendChild(el('p', 'exam-meta', t.subject + ' – ' + t.topic + ': ' + t.correct + '/' + t.total)); });" +
+            "  }" +
+            "  v.appendChild(backButton('Done'));" +
             "}" +
             "</script>" +
             "</head><body>" +
-            "<div class='loading'>" +
-            "<div class='spinner'></div>" +
-            "<p style='margin-top:16px;font-size:16px;'>Loading offline content...</p>" +
-            "</div>" +
+            "<div class='exam'></div>" +
             "<div class='main-content' style='display:flex;flex-direction:column;align-items:center;'>" +
             "<div class='logo'><span class='logo-icon'>🎓</span></div>" +
             "<h1 class='app-name'>JambGenius</h1>" +
@@ -689,6 +1147,9 @@ public class MainActivity extends Activity {
 
     @Override
     public void onBackPressed() {
+        if (tabManager.onBackPressed()) {
+            return;
+        }
         if (webView.canGoBack()) {
             webView.goBack();
         } else {
@@ -699,6 +1160,7 @@ public class MainActivity extends Activity {
     @Override
     protected void onStart() {
         super.onStart();
+        watchdog.start(getWindow());
         setupNetworkListener();
         setupDownloadReceiver();
     }
@@ -706,6 +1168,8 @@ public class MainActivity extends Activity {
     @Override
     protected void onStop() {
         super.onStop();
+        watchdog.stop();
+        watchdog.writeReport(new File(getFilesDir(), WATCHDOG_REPORT_FILE));
         unregisterNetworkListener();
         unregisterDownloadReceiver();
     }
@@ -714,6 +1178,7 @@ public class MainActivity extends Activity {
     protected void onResume() {
         super.onResume();
         webView.onResume();
+        tabManager.onResume();
         
         if (isOffline && hasInternetConnection()) {
             onNetworkAvailable();
@@ -724,11 +1189,22 @@ public class MainActivity extends Activity {
     protected void onPause() {
         super.onPause();
         webView.onPause();
+        tabManager.onPause();
+        prefetcher.save();
+        reconnectController.save();
+        analytics.flush();
+        answerJournal.flush();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         mainHandler.removeCallbacksAndMessages(null);
+        tabManager.destroyAll();
+        nativeFetch.shutdown();
+        shellAssetLoader.shutdown();
+        analytics.shutdown();
+        answerJournal.shutdown();
+        watchdog.shutdown();
     }
 }
@@ -0,0 +1,313 @@
+package com.jambgenius.web.app;
+
+import android.content.pm.ApplicationInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Printer;
+import android.view.Display;
+import android.view.FrameMetrics;
+import android.view.Window;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures how long each main-looper message takes to dispatch and how many frames
+ * are dropped, and attributes slow messages to the bridge call or WebView callback
+ * that was running. Slow dispatches are kept, with a main-thread stack sampled
+ * mid-stall, in a bounded ring that can be exported as JSON. Dispatch tracing costs
+ * a string per message, so release builds only enable it in a sample of sessions.
+ */
+class MainThreadWatchdog {
+    static final long STALL_THRESHOLD_MS = 100;
+    private static final int MAX_STALLS = 32;
+    private static final int MAX_STACK_FRAMES = 24;
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 16666667L;
+    private static final int DISPATCH_TRACE_SAMPLE = 20;
+
+    private final Looper mainLooper = Looper.getMainLooper();
+    private final HandlerThread samplerThread = new HandlerThread("JambGenius-Watchdog");
+    private Handler sampler;
+    private boolean running;
+    private Window window;
+    private Window.OnFrameMetricsAvailableListener frameMetricsListener;
+    private boolean tracingDecided;
+    private volatile boolean traceDispatches;
+    private volatile long frameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+
+    // Main thread only
+    private Printer previousPrinter;
+    private long dispatchStart;
+    private String dispatchTarget;
+    private String section;
+
+    // Guarded by this
+    private final ArrayDeque<JSONObject> stalls = new ArrayDeque<>();
+    private final Map<String, long[]> bridgeStats = new HashMap<>();
+    private long dispatchedMessages;
+    private long totalFrames;
+    private long droppedFrames;
+    private long worstFrameMs;
+
+    private volatile StackTraceElement[] sampledStack;
+
+    private final Runnable sampleStack = new Runnable() {
+        @Override
+        public void run() {
+            sampledStack = mainLooper.getThread().getStackTrace();
+        }
+    };
+
+    private final Printer dispatchPrinter = new Printer() {
+        @Override
+        public void println(String line) {
+            Printer chained = previousPrinter;
+            if (chained != null) chained.println(line);
+            if (line.startsWith(">>>>> Dispatching")) {
+                onDispatchStart(line);
+            } else if (line.startsWith("<<<<< Finished")) {
+                onDispatchEnd();
+            }
+        }
+    };
+
+    /** Call on the main thread. Frame drops are only tracked on API 24+, where frame metrics exist. */
+    void start(Window window) {
+        if (running) return;
+        running = true;
+        if (sampler == null) {
+            samplerThread.start();
+            sampler = new Handler(samplerThread.getLooper());
+        }
+        if (!tracingDecided) {
+            tracingDecided = true;
+            boolean debuggable = (window.getContext().getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+            traceDispatches = debuggable || new Random().nextInt(DISPATCH_TRACE_SAMPLE) == 0;
+        }
+        if (traceDispatches) {
+            // Chain whatever printer was installed (StrictMode, a profiler) instead of replacing it
+            previousPrinter = currentPrinter(mainLooper);
+            mainLooper.setMessageLogging(dispatchPrinter);
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            this.window = window;
+            frameIntervalNanos = frameIntervalOf(window);
+            if (frameMetricsListener == null) {
+                frameMetricsListener = new Window.OnFrameMetricsAvailableListener() {
+                    @Override
+                    public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+                        // API 31+ reports each frame's own deadline, which follows refresh-rate switches
+                        long deadline = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ?
+                            frameMetrics.getMetric(FrameMetrics.DEADLINE) : 0;
+                        onFrame(frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION),
+                            deadline > 0 ? deadline : frameIntervalNanos, dropCountSinceLastInvocation);
+                    }
+                };
+            }
+            window.addOnFrameMetricsAvailableListener(frameMetricsListener, sampler);
+        }
+    }
+
+    /** Call on the main thread. */
+    void stop() {
+        if (!running) return;
+        running = false;
+        if (traceDispatches) {
+            // Leave a printer installed after ours alone; it may be chaining us
+            Printer current = currentPrinter(mainLooper);
+            if (current == null || current == dispatchPrinter) {
+                mainLooper.setMessageLogging(previousPrinter);
+            }
+            previousPrinter = null;
+        }
+        sampler.removeCallbacks(sampleStack);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && window != null) {
+            try {
+                window.removeOnFrameMetricsAvailableListener(frameMetricsListener);
+            } catch (IllegalArgumentException e) {
+                // Not registered
+            }
+            window = null;
+        }
+    }
+
+    /** Looper has no getter for its printer, so read the field; null if that is not allowed. */
+    private static Printer currentPrinter(Looper looper) {
+        try {
+            Field field = Looper.class.getDeclaredField("mLogging");
+            field.setAccessible(true);
+            return (Printer) field.get(looper);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static long frameIntervalOf(Window window) {
+        Display display = window.getWindowManager().getDefaultDisplay();
+        float refreshRate = display != null ? display.getRefreshRate() : 0;
+        return refreshRate >= 1 ? (long) (1e9 / refreshRate) : DEFAULT_FRAME_INTERVAL_NANOS;
+    }
+
+    private synchronized void onFrame(long durationNanos, long intervalNanos, int unreported) {
+        totalFrames += 1 + unreported;
+        long skipped = durationNanos / intervalNanos;
+        droppedFrames += skipped + unreported;
+        worstFrameMs = Math.max(worstFrameMs, durationNanos / 1000000L);
+    }
+
+    void shutdown() {
+        stop();
+        samplerThread.quitSafely();
+    }
+
+    private void onDispatchStart(String line) {
+        dispatchStart = SystemClock.uptimeMillis();
+        dispatchTarget = line;
+        section = null;
+        sampledStack = null;
+        sampler.postDelayed(sampleStack, STALL_THRESHOLD_MS);
+    }
+
+    private void onDispatchEnd() {
+        if (dispatchStart == 0) return;
+        long duration = SystemClock.uptimeMillis() - dispatchStart;
+        dispatchStart = 0;
+        sampler.removeCallbacks(sampleStack);
+        synchronized (this) {
+            dispatchedMessages++;
+        }
+        if (duration >= STALL_THRESHOLD_MS) {
+            recordStall(duration, dispatchTarget, section, sampledStack);
+        }
+    }
+
+    /** Labels the work running on the main thread so a stall can be attributed to it. */
+    void enterSection(String name) {
+        section = name;
+    }
+
+    /** Wraps a runnable posted to the main thread so its name shows in stall traces. */
+    Runnable named(final String name, final Runnable runnable) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                section = name;
+                runnable.run();
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+
+    /** Records a bridge call's latency, measured on the JavaBridge thread. */
+    void recordBridgeCall(String method, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        synchronized (this) {
+            long[] stats = bridgeStats.get(method);
+            if (stats == null) {
+                stats = new long[3];
+                bridgeStats.put(method, stats);
+            }
+            stats[0]++;
+            stats[1] += elapsed;
+            stats[2] = Math.max(stats[2], elapsed);
+        }
+    }
+
+    private void recordStall(long durationMs, String target, String sectionName, StackTraceElement[] stack) {
+        try {
+            JSONObject stall = new JSONObject();
+            stall.put("at", System.currentTimeMillis());
+            stall.put("durationMs", durationMs);
+            stall.put("message", target);
+            if (sectionName != null) stall.put("section", sectionName);
+            if (stack != null) {
+                JSONArray frames = new JSONArray();
+                for (int i = 0; i < stack.length && i < MAX_STACK_FRAMES; i++) {
+                    frames.put(stack[i].toString());
+                }
+                stall.put("stack", frames);
+            }
+            synchronized (this) {
+                if (stalls.size() >= MAX_STALLS) stalls.removeFirst();
+                stalls.addLast(stall);
+            }
+        } catch (Exception e) {
+            // Diagnostics must never take the app down
+        }
+    }
+
+    synchronized String exportReport() {
+        try {
+            JSONObject report = new JSONObject();
+            report.put("dispatchedMessages", dispatchedMessages);
+            report.put("stallThresholdMs", STALL_THRESHOLD_MS);
+            report.put("dispatchTracing", traceDispatches);
+
+            JSONObject frames = new JSONObject();
+            frames.put("total", totalFrames);
+            frames.put("dropped", droppedFrames);
+            frames.put("worstMs", worstFrameMs);
+            frames.put("intervalMs", frameIntervalNanos / 1e6);
+            report.put("frames", frames);
+
+            JSONObject bridge = new JSONObject();
+            for (Map.Entry<String, long[]> entry : bridgeStats.entrySet()) {
+                long[] stats = entry.getValue();
+                JSONObject method = new JSONObject();
+                method.put("calls", stats[0]);
+                method.put("avgMs", stats[0] == 0 ? 0 : stats[1] / stats[0] / 1e6);
+                method.put("maxMs", stats[2] / 1e6);
+                bridge.put(entry.getKey(), method);
+            }
+            report.put("bridge", bridge);
+
+            JSONArray stallList = new JSONArray();
+            for (JSONObject stall : stalls) {
+                stallList.put(stall);
+            }
+            report.put("stalls", stallList);
+            return report.toString();
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+
+    /** Writes the current report to {@code file} off the main thread. */
+    void writeReport(final File file) {
+        if (sampler == null) return;
+        final String report = exportReport();
+        sampler.post(new Runnable() {
+            @Override
+            public void run() {
+                File dir = file.getParentFile();
+                if (dir != null && !dir.exists()) dir.mkdirs();
+                try {
+                    FileOutputStream out = new FileOutputStream(file);
+                    try {
+                        out.write(report.getBytes("UTF-8"));
+                    } finally {
+                        out.close();
+                    }
+                } catch (IOException e) {
+                    // Best effort
+                }
+            }
+        });
+    }
+}
@@ -20,13 +20,17 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
 
         String title = "JambGenius";
         String body = "New message received";
+        String imageUrl = remoteMessage.getData().get("image");
 
         if (remoteMessage.getNotification() != null) {
             title = remoteMessage.getNotification().getTitle();
             body = remoteMessage.getNotification().getBody();
+            if (imageUrl == null && remoteMessage.getNotification().getImageUrl() != null) {
+                imageUrl = remoteMessage.getNotification().getImageUrl().toString();
+            }
         }
 
-        sendNotification(title, body);
+        sendNotification(title, body, imageUrl);
     }
 
     @Override
@@ -34,7 +38,7 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
         super.onNewToken(token);
     }
 
-    private void sendNotification(String title, String body) {
+    private void sendNotification(String title, String body, String imageUrl) {
 
         Intent intent = new Intent(this, MainActivity.class);
         intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
@@ -56,6 +60,8 @@ public class MyFirebaseMessagingService extends FirebaseMessagingService {
                         .setSound(soundUri)
                         .setContentIntent(pendingIntent);
 
+        NotificationRenderer.getInstance(this).applyImages(notificationBuilder, imageUrl, null, body);
+
         NotificationManager notificationManager =
                 (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
 
@@ -0,0 +1,489 @@
+package com.jambgenius.web.app;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebView;
+import androidx.webkit.JavaScriptReplyProxy;
+import androidx.webkit.WebMessageCompat;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Cookie;
+import okhttp3.CookieJar;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Fetch path for the page's API calls that bypasses the WebView network stack.
+ * Requests share one process-wide HTTP/2 connection pool and a small cache that
+ * follows the server's cache headers. Identical GETs already in flight are
+ * coalesced into one network call, and latency, dedupe and cache counts are kept
+ * per endpoint. Only the site's own origin can be reached, and only the site's
+ * own main frame can ask: requests arrive through a web message listener with an
+ * origin rule rather than a JavaScript interface every frame could call.
+ */
+class NativeFetch {
+    private static final String TAG = "JambGenius-Fetch";
+    private static final String CACHE_DIR = "api-cache";
+    private static final long CACHE_BYTES = 4 * 1024 * 1024;
+    private static final int TIMEOUT_SECONDS = 20;
+    static final int MAX_BATCH = 16;
+    static final String LISTENER_NAME = "JambGeniusFetch";
+    private static final int MAX_ENDPOINTS = 64;
+    private static final String DEFAULT_CONTENT_TYPE = "application/json; charset=utf-8";
+    // Per-endpoint counters
+    private static final int CALLS = 0;
+    private static final int ERRORS = 1;
+    private static final int TOTAL_MS = 2;
+    private static final int MAX_MS = 3;
+    private static final int DEDUPED = 4;
+    private static final int CACHE_HITS = 5;
+    private static final int REVALIDATED = 6;
+
+    /** Receives a request's result JSON on an OkHttp thread. */
+    interface Sink {
+        void resolve(String requestId, String resultJson);
+    }
+
+    private interface Listener {
+        void onResult(JSONObject result);
+    }
+
+    private static class InFlight {
+        final List<Listener> listeners = new ArrayList<>();
+        Call call;
+    }
+
+    private static OkHttpClient sharedClient;
+
+    private final OkHttpClient client;
+    private final HttpUrl origin;
+
+    // Guarded by inFlight
+    private final Map<String, InFlight> inFlight = new HashMap<>();
+    // Guarded by endpoints
+    private final Map<String, long[]> endpoints = new HashMap<>();
+    private volatile boolean closed;
+
+    NativeFetch(Context context, String origin) {
+        this(sharedClient(context), origin);
+    }
+
+    NativeFetch(OkHttpClient client, String origin) {
+        this.client = client;
+        this.origin = HttpUrl.parse(origin);
+    }
+
+    /** One client per process so every caller reuses the same pooled connections and cache. */
+    static synchronized OkHttpClient sharedClient(Context context) {
+        if (sharedClient == null) {
+            File cacheDir = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR);
+            sharedClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                .cache(new Cache(cacheDir, CACHE_BYTES))
+                .cookieJar(new WebViewCookieJar())
+                .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+        }
+        return sharedClient;
+    }
+
+    /** Shares the WebView's cookies so native calls carry the same session as the page. */
+    private static class WebViewCookieJar implements CookieJar {
+        @Override
+        public void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
+            CookieManager manager = CookieManager.getInstance();
+            for (Cookie cookie : cookies) {
+                manager.setCookie(url.toString(), cookie.toString());
+            }
+        }
+
+        @Override
+        public List<Cookie> loadForRequest(HttpUrl url) {
+            String header = CookieManager.getInstance().getCookie(url.toString());
+            if (header == null || header.isEmpty()) return Collections.emptyList();
+            List<Cookie> cookies = new ArrayList<>();
+            for (String pair : header.split(";")) {
+                Cookie cookie = Cookie.parse(url, pair.trim());
+                if (cookie != null) cookies.add(cookie);
+            }
+            return cookies;
+        }
+    }
+
+    /**
+     * Injects window.JambGeniusFetch into {@code allowedOrigin}'s main frame. Returns
+     * false where the WebView has no message listener support. UI thread only.
+     */
+    boolean attach(WebView webView, String allowedOrigin) {
+        if (!WebViewFeatures.isFeatureSupported(WebViewFeature.WEB_MESSAGE_LISTENER)) return false;
+        final Handler uiHandler = new Handler(Looper.getMainLooper());
+        WebViewCompat.addWebMessageListener(webView, LISTENER_NAME, Collections.singleton(allowedOrigin),
+            new WebViewCompat.WebMessageListener() {
+                @Override
+                public void onPostMessage(WebView view, WebMessageCompat message, Uri sourceOrigin,
+                                          boolean isMainFrame, final JavaScriptReplyProxy replyProxy) {
+                    if (!isMainFrame) return;
+                    // Replies go to the asking document only; after a navigation they are dropped
+                    onMessage(message.getData(), new Sink() {
+                        @Override
+                        public void resolve(String requestId, String resultJson) {
+                            final String reply = "{\"id\":" + JSONObject.quote(requestId) + ",\"result\":" + resultJson + "}";
+                            // The proxy is UI-thread only; this hop just hands over a string
+                            uiHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    replyProxy.postMessage(reply);
+                                }
+                            });
+                        }
+                    });
+                }
+            });
+        return true;
+    }
+
+    /** Handles one {type, id, ...} message from the document-start shim; results go to {@code sink}. */
+    void onMessage(String data, Sink sink) {
+        JSONObject message;
+        try {
+            message = new JSONObject(data);
+        } catch (Exception e) {
+            Log.w(TAG, "Ignoring malformed fetch message");
+            return;
+        }
+        String id = message.optString("id", "");
+        if (id.isEmpty()) return;
+
+        if ("batch".equals(message.optString("type"))) {
+            JSONArray requests = message.optJSONArray("requests");
+            fetchBatch(id, requests != null ? requests.toString() : "", sink);
+        } else {
+            JSONObject headers = message.optJSONObject("headers");
+            fetch(id, message.optString("method", "GET"), message.optString("url", ""),
+                headers != null ? headers.toString() : null,
+                message.isNull("body") ? null : message.optString("body", null), sink);
+        }
+    }
+
+    /** Starts one request; the result reaches the sink under {@code requestId}. */
+    void fetch(final String requestId, String method, String url, String headersJson, String body, final Sink sink) {
+        execute(method, url, parseHeaders(headersJson), body, new Listener() {
+            @Override
+            public void onResult(JSONObject result) {
+                deliver(sink, requestId, result.toString());
+            }
+        });
+    }
+
+    /**
+     * Starts independent requests together over the shared pool and resolves them as
+     * one array, in request order, once the last finishes. {@code requestsJson} is an
+     * array of {method, url, headers, body}.
+     */
+    void fetchBatch(final String batchId, String requestsJson, final Sink sink) {
+        JSONArray requests;
+        try {
+            requests = new JSONArray(requestsJson);
+        } catch (Exception e) {
+            deliver(sink, batchId, new JSONArray().put(error("Invalid batch")).toString());
+            return;
+        }
+        if (requests.length() == 0 || requests.length() > MAX_BATCH) {
+            deliver(sink, batchId, new JSONArray().put(error("Batch must hold 1 to " + MAX_BATCH + " requests")).toString());
+            return;
+        }
+
+        final JSONObject[] results = new JSONObject[requests.length()];
+        final AtomicInteger remaining = new AtomicInteger(results.length);
+        for (int i = 0; i < results.length; i++) {
+            JSONObject spec = requests.optJSONObject(i);
+            if (spec == null) spec = new JSONObject();
+            final int slot = i;
+            JSONObject headers = spec.optJSONObject("headers");
+            execute(spec.optString("method", "GET"), spec.optString("url", ""),
+                headers != null ? headers : new JSONObject(),
+                spec.isNull("body") ? null : spec.optString("body", null),
+                new Listener() {
+                    @Override
+                    public void onResult(JSONObject result) {
+                        results[slot] = result;
+                        if (remaining.decrementAndGet() == 0) {
+                            JSONArray all = new JSONArray();
+                            for (JSONObject item : results) all.put(item);
+                            deliver(sink, batchId, all.toString());
+                        }
+                    }
+                });
+        }
+    }
+
+    private void deliver(Sink sink, String id, String resultJson) {
+        if (!closed) sink.resolve(id, resultJson);
+    }
+
+    private static JSONObject parseHeaders(String headersJson) {
+        if (headersJson == null || headersJson.isEmpty()) return new JSONObject();
+        try {
+            return new JSONObject(headersJson);
+        } catch (Exception e) {
+            return new JSONObject();
+        }
+    }
+
+    private void execute(String rawMethod, String rawUrl, JSONObject headerJson, String body, Listener listener) {
+        final String method = rawMethod == null || rawMethod.isEmpty() ? "GET" : rawMethod.toUpperCase();
+        final HttpUrl url = resolve(rawUrl);
+        if (url == null) {
+            listener.onResult(error("Only " + origin + " can be fetched natively"));
+            return;
+        }
+
+        // Sorted so the same headers in a different order still coalesce
+        TreeMap<String, String> sorted = new TreeMap<>();
+        Iterator<String> names = headerJson.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            String lower = name.toLowerCase();
+            if (lower.equals("host") || lower.equals("content-length") || lower.equals("cookie")) continue;
+            sorted.put(lower, headerJson.optString(name));
+        }
+        final Request request;
+        try {
+            Headers.Builder headers = new Headers.Builder();
+            for (Map.Entry<String, String> header : sorted.entrySet()) {
+                headers.add(header.getKey(), header.getValue());
+            }
+            RequestBody requestBody = null;
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                String contentType = sorted.containsKey("content-type") ? sorted.get("content-type") : DEFAULT_CONTENT_TYPE;
+                requestBody = RequestBody.create(body != null ? body : "", MediaType.parse(contentType));
+            }
+            request = new Request.Builder().url(url).headers(headers.build()).method(method, requestBody).build();
+        } catch (IllegalArgumentException e) {
+            listener.onResult(error("Unsupported request: " + e.getMessage()));
+            return;
+        }
+
+        final String endpoint = endpointOf(method, url);
+        final String key = method.equals("GET") ? url + "\n" + sorted : null;
+        if (key != null) {
+            synchronized (inFlight) {
+                InFlight pending = inFlight.get(key);
+                if (pending != null) {
+                    pending.listeners.add(listener);
+                    record(endpoint, DEDUPED);
+                    return;
+                }
+                pending = new InFlight();
+                pending.listeners.add(listener);
+                inFlight.put(key, pending);
+            }
+        }
+
+        final List<Listener> single = key == null ? Collections.singletonList(listener) : null;
+        final long start = SystemClock.elapsedRealtime();
+        Call call = client.newCall(request);
+        if (key != null) {
+            synchronized (inFlight) {
+                InFlight pending = inFlight.get(key);
+                if (pending != null) pending.call = call;
+            }
+        }
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.d(TAG, endpoint + " failed: " + e.getMessage());
+                recordLatency(endpoint, SystemClock.elapsedRealtime() - start, true);
+                complete(key, single, error(e.getMessage() != null ? e.getMessage() : "Network error"));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                JSONObject result;
+                try {
+                    result = toResult(response);
+                    if (response.networkResponse() == null) {
+                        record(endpoint, CACHE_HITS);
+                    } else if (response.cacheResponse() != null) {
+                        record(endpoint, REVALIDATED);
+                    }
+                } catch (Exception e) {
+                    result = error("Could not read response");
+                } finally {
+                    response.close();
+                }
+                int status = result.optInt("status");
+                recordLatency(endpoint, SystemClock.elapsedRealtime() - start, status == 0 || status >= 500);
+                complete(key, single, result);
+            }
+        });
+    }
+
+    private void complete(String key, List<Listener> single, JSONObject result) {
+        List<Listener> listeners = single;
+        if (key != null) {
+            synchronized (inFlight) {
+                InFlight pending = inFlight.remove(key);
+                listeners = pending != null ? pending.listeners : Collections.<Listener>emptyList();
+            }
+        }
+        for (Listener listener : listeners) {
+            listener.onResult(result);
+        }
+    }
+
+    /** Accepts paths and absolute URLs on the origin; anything else is refused. */
+    private HttpUrl resolve(String rawUrl) {
+        if (origin == null || rawUrl == null || rawUrl.isEmpty()) return null;
+        HttpUrl url = origin.resolve(rawUrl);
+        if (url == null) return null;
+        if (!url.scheme().equals(origin.scheme()) || !url.host().equals(origin.host()) || url.port() != origin.port()) {
+            return null;
+        }
+        return url;
+    }
+
+    private static JSONObject toResult(Response response) throws Exception {
+        JSONObject result = new JSONObject();
+        result.put("ok", response.isSuccessful());
+        result.put("status", response.code());
+        result.put("statusText", response.message());
+        result.put("url", response.request().url().toString());
+        result.put("cached", response.networkResponse() == null);
+        JSONObject headers = new JSONObject();
+        for (String name : response.headers().names()) {
+            headers.put(name.toLowerCase(), response.header(name));
+        }
+        result.put("headers", headers);
+        result.put("body", response.body() != null ? response.body().string() : "");
+        return result;
+    }
+
+    private static JSONObject error(String message) {
+        JSONObject result = new JSONObject();
+        try {
+            result.put("ok", false);
+            result.put("status", 0);
+            result.put("error", message);
+        } catch (Exception e) {
+            // Unreachable for string values
+        }
+        return result;
+    }
+
+    /** "GET /api/questions/:id" - numeric and long hex segments are folded so the table stays small. */
+    private static String endpointOf(String method, HttpUrl url) {
+        StringBuilder path = new StringBuilder();
+        for (String segment : url.pathSegments()) {
+            if (segment.isEmpty()) continue;
+            path.append('/');
+            path.append(segment.matches("\\d+|[0-9a-fA-F-]{16,}") ? ":id" : segment);
+        }
+        return method + " " + (path.length() == 0 ? "/" : path.toString());
+    }
+
+    private long[] endpointStats(String endpoint) {
+        long[] stats = endpoints.get(endpoint);
+        if (stats == null) {
+            if (endpoints.size() >= MAX_ENDPOINTS) endpoint = "other";
+            stats = endpoints.get(endpoint);
+            if (stats == null) {
+                stats = new long[REVALIDATED + 1];
+                endpoints.put(endpoint, stats);
+            }
+        }
+        return stats;
+    }
+
+    private void record(String endpoint, int counter) {
+        synchronized (endpoints) {
+            endpointStats(endpoint)[counter]++;
+        }
+    }
+
+    private void recordLatency(String endpoint, long elapsedMs, boolean failed) {
+        synchronized (endpoints) {
+            long[] stats = endpointStats(endpoint);
+            stats[CALLS]++;
+            if (failed) stats[ERRORS]++;
+            stats[TOTAL_MS] += elapsedMs;
+            stats[MAX_MS] = Math.max(stats[MAX_MS], elapsedMs);
+        }
+    }
+
+    String getStats() {
+        try {
+            JSONObject report = new JSONObject();
+            synchronized (inFlight) {
+                report.put("inFlight", inFlight.size());
+            }
+            report.put("pooledConnections", client.connectionPool().connectionCount());
+            Cache cache = client.cache();
+            if (cache != null) {
+                report.put("cacheRequests", cache.requestCount());
+                report.put("cacheHits", cache.hitCount());
+                report.put("cacheNetwork", cache.networkCount());
+            }
+            JSONObject endpointReport = new JSONObject();
+            synchronized (endpoints) {
+                for (Map.Entry<String, long[]> entry : endpoints.entrySet()) {
+                    long[] stats = entry.getValue();
+                    JSONObject item = new JSONObject();
+                    item.put("calls", stats[CALLS]);
+                    item.put("errors", stats[ERRORS]);
+                    item.put("avgMs", stats[CALLS] == 0 ? 0 : stats[TOTAL_MS] / stats[CALLS]);
+                    item.put("maxMs", stats[MAX_MS]);
+                    item.put("deduped", stats[DEDUPED]);
+                    item.put("cacheHits", stats[CACHE_HITS]);
+                    item.put("revalidated", stats[REVALIDATED]);
+                    endpointReport.put(entry.getKey(), item);
+                }
+            }
+            report.put("endpoints", endpointReport);
+            return report.toString();
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+
+    /** Cancels this instance's calls and stops delivering results; the shared pool stays up. */
+    void shutdown() {
+        closed = true;
+        synchronized (inFlight) {
+            for (InFlight pending : inFlight.values()) {
+                if (pending.call != null) pending.call.cancel();
+            }
+            inFlight.clear();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.jambgenius.web.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.Uri;
+import android.os.Build;
+import android.webkit.WebView;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Learns route-to-route transitions from in-app navigation and, once a page has
+ * gone idle, asks the WebView to prefetch the most likely next routes into its
+ * HTTP cache. The model is bounded in both source routes and successors per route.
+ * Guarded by this: the main thread updates it while the bridge reads stats.
+ */
+class NavigationPrefetcher {
+    private static final String PREFS_NAME = "JambGeniusPrefetch";
+    private static final String KEY_MODEL = "transition_model";
+    private static final String KEY_HITS = "hits";
+    private static final String KEY_ISSUED = "issued";
+    private static final int MAX_SOURCES = 64;
+    private static final int MAX_SUCCESSORS = 8;
+    private static final float MIN_PROBABILITY = 0.2f;
+    private static final int MIN_OBSERVATIONS = 2;
+
+    private final SharedPreferences prefs;
+    private final ConnectivityManager connectivityManager;
+    private final String host;
+    private final LinkedHashMap<String, LinkedHashMap<String, Integer>> transitions =
+        new LinkedHashMap<String, LinkedHashMap<String, Integer>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LinkedHashMap<String, Integer>> eldest) {
+                return size() > MAX_SOURCES;
+            }
+        };
+    private final Set<String> prefetched = new HashSet<>();
+    private String lastRoute;
+    private int hits;
+    private int issued;
+    private boolean dirty;
+
+    NavigationPrefetcher(Context context, ConnectivityManager connectivityManager, String baseUrl) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.connectivityManager = connectivityManager;
+        this.host = Uri.parse(baseUrl).getHost();
+        load();
+    }
+
+    private void load() {
+        hits = prefs.getInt(KEY_HITS, 0);
+        issued = prefs.getInt(KEY_ISSUED, 0);
+        try {
+            JSONObject model = new JSONObject(prefs.getString(KEY_MODEL, "{}"));
+            Iterator<String> sources = model.keys();
+            while (sources.hasNext()) {
+                String source = sources.next();
+                JSONObject successors = model.getJSONObject(source);
+                LinkedHashMap<String, Integer> counts = new LinkedHashMap<>();
+                Iterator<String> targets = successors.keys();
+                while (targets.hasNext()) {
+                    String target = targets.next();
+                    counts.put(target, successors.getInt(target));
+                }
+                transitions.put(source, counts);
+            }
+        } catch (Exception e) {
+            transitions.clear();
+        }
+    }
+
+    synchronized void save() {
+        if (!dirty) return;
+        dirty = false;
+        try {
+            JSONObject model = new JSONObject();
+            for (Map.Entry<String, LinkedHashMap<String, Integer>> source : transitions.entrySet()) {
+                model.put(source.getKey(), new JSONObject(source.getValue()));
+            }
+            prefs.edit()
+                .putString(KEY_MODEL, model.toString())
+                .putInt(KEY_HITS, hits)
+                .putInt(KEY_ISSUED, issued)
+                .apply();
+        } catch (Exception e) {
+            // Model is a cache; losing an update is harmless
+        }
+    }
+
+    /** Records a navigation to {@code url}. Non-site URLs end the current chain. */
+    synchronized void recordNavigation(String url) {
+        String route = toRoute(url);
+        if (route == null) {
+            lastRoute = null;
+            return;
+        }
+        if (route.equals(lastRoute)) return;
+
+        if (prefetched.contains(route)) {
+            hits++;
+        }
+        prefetched.clear();
+
+        if (lastRoute != null) {
+            LinkedHashMap<String, Integer> successors = transitions.get(lastRoute);
+            if (successors == null) {
+                successors = new LinkedHashMap<>();
+                transitions.put(lastRoute, successors);
+            }
+            Integer count = successors.get(route);
+            successors.put(route, count == null ? 1 : count + 1);
+            if (successors.size() > MAX_SUCCESSORS) {
+                removeLeastLikely(successors, route);
+            }
+            dirty = true;
+        }
+        lastRoute = route;
+    }
+
+    private static void removeLeastLikely(Map<String, Integer> successors, String keep) {
+        String weakest = null;
+        int weakestCount = Integer.MAX_VALUE;
+        for (Map.Entry<String, Integer> entry : successors.entrySet()) {
+            if (!entry.getKey().equals(keep) && entry.getValue() < weakestCount) {
+                weakest = entry.getKey();
+                weakestCount = entry.getValue();
+            }
+        }
+        if (weakest != null) successors.remove(weakest);
+    }
+
+    /** Called once the current page has gone idle; issues prefetches within the network budget. */
+    void onIdle(WebView webView) {
+        int budget = prefetchBudget();
+        if (budget == 0) return;
+
+        JSONArray urls = new JSONArray();
+        synchronized (this) {
+            if (lastRoute == null) return;
+            for (String route : predict(lastRoute, budget)) {
+                if (prefetched.add(route)) {
+                    urls.put(route);
+                    issued++;
+                }
+            }
+            if (urls.length() == 0) return;
+            dirty = true;
+        }
+
+        String script = "(function(routes){" +
+            "routes.forEach(function(r){" +
+            "if (document.querySelector('link[rel=prefetch][href=\"' + r + '\"]')) return;" +
+            "var l = document.createElement('link'); l.rel = 'prefetch'; l.href = r;" +
+            "document.head.appendChild(l);});" +
+            "if (typeof window.jambGeniusPrefetch === 'function') window.jambGeniusPrefetch(routes);" +
+            "})(" + urls + ");";
+        webView.evaluateJavascript(script, null);
+    }
+
+    synchronized List<String> predict(String route, int limit) {
+        List<String> result = new ArrayList<>();
+        Map<String, Integer> successors = transitions.get(route);
+        if (successors == null) return result;
+
+        int total = 0;
+        for (int count : successors.values()) total += count;
+        if (total < MIN_OBSERVATIONS) return result;
+
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>(successors.entrySet());
+        Collections.sort(ranked, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                return b.getValue() - a.getValue();
+            }
+        });
+        for (Map.Entry<String, Integer> entry : ranked) {
+            if (result.size() >= limit || (float) entry.getValue() / total < MIN_PROBABILITY) break;
+            result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    /** Routes to prefetch per idle page: generous on unmetered links, nothing on slow or data-saver links. */
+    int prefetchBudget() {
+        if (connectivityManager == null) return 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N &&
+            connectivityManager.getRestrictBackgroundStatus() == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED) {
+            return 0;
+        }
+        if (!connectivityManager.isActiveNetworkMetered()) return 3;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Network network = connectivityManager.getActiveNetwork();
+            NetworkCapabilities capabilities = network != null ? connectivityManager.getNetworkCapabilities(network) : null;
+            if (capabilities == null) return 0;
+            int downKbps = capabilities.getLinkDownstreamBandwidthKbps();
+            if (downKbps >= 5000) return 2;
+            if (downKbps >= 1000) return 1;
+            return 0;
+        }
+        return 1;
+    }
+
+    synchronized String getStats() {
+        try {
+            JSONObject stats = new JSONObject();
+            stats.put("issued", issued);
+            stats.put("hits", hits);
+            stats.put("hitRate", issued == 0 ? 0 : (double) hits / issued);
+            stats.put("routes", transitions.size());
+            return stats.toString();
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+
+    private String toRoute(String url) {
+        if (url == null) return null;
+        Uri uri = Uri.parse(url);
+        if (host == null || !host.equals(uri.getHost())) return null;
+        String path = uri.getPath();
+        String route = path == null || path.isEmpty() ? "/" : path;
+        // Routes that differ by query (?subject=physics) are different pages
+        String query = uri.getEncodedQuery();
+        return query != null && !query.isEmpty() ? route + "?" + query : route;
+    }
+}
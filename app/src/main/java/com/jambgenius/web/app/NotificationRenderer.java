@@ -0,0 +1,246 @@
+package com.jambgenius.web.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+import androidx.core.app.NotificationCompat;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds images to push notifications without risking the FCM processing window.
+ * Images are fetched and decoded on a worker, downsampled to notification size,
+ * and kept in small memory and disk LRU caches so repeated campaign images are
+ * not fetched again. If the time budget runs out the notification stays text-only.
+ */
+class NotificationRenderer {
+    private static final String TAG = "JambGenius-FCM";
+    private static final String DISK_CACHE_DIR = "notification-images";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long DEFAULT_BUDGET_MS = 6000;
+    private static final int MAX_DISK_CACHE_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_DOWNLOAD_BYTES = 4 * 1024 * 1024;
+    private static final int BIG_PICTURE_WIDTH_DP = 450;
+    private static final int BIG_PICTURE_HEIGHT_DP = 225;
+
+    private static NotificationRenderer instance;
+
+    private final File diskCacheDir;
+    private final int bigPictureWidth;
+    private final int bigPictureHeight;
+    private final int largeIconSize;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final LruCache<String, Bitmap> memoryCache = new LruCache<String, Bitmap>(MAX_MEMORY_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    static synchronized NotificationRenderer getInstance(Context context) {
+        if (instance == null) {
+            instance = new NotificationRenderer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private NotificationRenderer(Context context) {
+        Resources resources = context.getResources();
+        float density = resources.getDisplayMetrics().density;
+        this.diskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        this.bigPictureWidth = Math.round(BIG_PICTURE_WIDTH_DP * density);
+        this.bigPictureHeight = Math.round(BIG_PICTURE_HEIGHT_DP * density);
+        this.largeIconSize = resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+    }
+
+    /**
+     * Applies a big picture and large icon to {@code builder} when they can be ready
+     * within the default budget. Either URL may be null. Call from a background thread.
+     */
+    void applyImages(NotificationCompat.Builder builder, String imageUrl, String iconUrl, String body) {
+        long deadline = SystemClock.elapsedRealtime() + DEFAULT_BUDGET_MS;
+
+        Future<Bitmap> picture = imageUrl != null && !imageUrl.isEmpty() ?
+            submit(imageUrl, bigPictureWidth, bigPictureHeight, deadline) : null;
+        Future<Bitmap> icon = iconUrl != null && !iconUrl.isEmpty() ?
+            submit(iconUrl, largeIconSize, largeIconSize, deadline) : null;
+
+        Bitmap iconBitmap = await(icon, deadline);
+        if (iconBitmap != null) {
+            builder.setLargeIcon(iconBitmap);
+        }
+
+        Bitmap pictureBitmap = await(picture, deadline);
+        if (pictureBitmap != null) {
+            NotificationCompat.BigPictureStyle style = new NotificationCompat.BigPictureStyle()
+                .bigPicture(pictureBitmap)
+                .setSummaryText(body);
+            if (iconBitmap == null) {
+                builder.setLargeIcon(pictureBitmap);
+            }
+            style.bigLargeIcon((Bitmap) null);
+            builder.setStyle(style);
+        }
+    }
+
+    private Future<Bitmap> submit(final String url, final int width, final int height, final long deadline) {
+        return executor.submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return load(url, width, height, deadline);
+            }
+        });
+    }
+
+    private static Bitmap await(Future<Bitmap> future, long deadline) {
+        if (future == null) return null;
+        long remaining = deadline - SystemClock.elapsedRealtime();
+        try {
+            return remaining > 0 ? future.get(remaining, TimeUnit.MILLISECONDS) : null;
+        } catch (Exception e) {
+            Log.d(TAG, "Notification image not ready in time, sending text-only");
+            future.cancel(true);
+            return null;
+        }
+    }
+
+    private Bitmap load(String url, int width, int height, long deadline) {
+        String key = cacheKey(url);
+        String memoryKey = key + "@" + width + "x" + height;
+        Bitmap cached = memoryCache.get(memoryKey);
+        if (cached != null) return cached;
+
+        File file = new File(diskCacheDir, key);
+        if (file.exists()) {
+            file.setLastModified(System.currentTimeMillis());
+        } else if (!download(url, file, deadline)) {
+            return null;
+        }
+
+        Bitmap bitmap = decodeSampled(file, width, height);
+        if (bitmap != null) {
+            memoryCache.put(memoryKey, bitmap);
+        }
+        return bitmap;
+    }
+
+    private boolean download(String url, File target, long deadline) {
+        int timeout = (int) Math.max(500, deadline - SystemClock.elapsedRealtime());
+        HttpURLConnection conn = null;
+        File temp = null;
+        try {
+            conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setConnectTimeout(timeout);
+            conn.setReadTimeout(timeout);
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) return false;
+            if (conn.getContentLength() > MAX_DOWNLOAD_BYTES) return false;
+
+            if (!diskCacheDir.exists()) diskCacheDir.mkdirs();
+            // Unique per download so concurrent fetches of the same URL don't share a file
+            temp = File.createTempFile("download", TEMP_SUFFIX, diskCacheDir);
+            InputStream in = conn.getInputStream();
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                byte[] buffer = new byte[16 * 1024];
+                int total = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    total += read;
+                    if (total > MAX_DOWNLOAD_BYTES || Thread.currentThread().isInterrupted()) {
+                        throw new IOException("Image download aborted");
+                    }
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+                in.close();
+            }
+            if (!temp.renameTo(target)) return false;
+            trimDiskCache();
+            return true;
+        } catch (IOException e) {
+            Log.d(TAG, "Notification image fetch failed: " + e.getMessage());
+            return false;
+        } finally {
+            if (temp != null) temp.delete();
+            if (conn != null) conn.disconnect();
+        }
+    }
+
+    private static Bitmap decodeSampled(File file, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            file.delete();
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+
+    private synchronized void trimDiskCache() {
+        // In-flight downloads are neither counted nor evicted
+        File[] files = diskCacheDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return !file.getName().endsWith(TEMP_SUFFIX);
+            }
+        });
+        if (files == null) return;
+
+        long total = 0;
+        for (File file : files) total += file.length();
+        if (total <= MAX_DISK_CACHE_BYTES) return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (total <= MAX_DISK_CACHE_BYTES) break;
+            total -= file.length();
+            file.delete();
+        }
+    }
+
+    private static String cacheKey(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
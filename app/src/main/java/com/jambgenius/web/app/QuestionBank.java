@@ -0,0 +1,289 @@
+package com.jambgenius.web.app;
+
+import android.content.Context;
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * On-device store of practice questions, one file per subject under
+ * files/questions. Each question is a normalised JSON line
+ * ({"id","q","o":[options],"a":answerIndex,"t":topic}) so an exam can keep
+ * just byte offsets and read a question back with a single seek.
+ */
+class QuestionBank {
+    private static final String TAG = "JambGenius-Questions";
+    private static final String DIR = "questions";
+    private static final String SUFFIX = ".jsonl";
+    static final int MAX_OPTIONS = 5;
+
+    /** Offsets, ids, answers and topics for every question in one subject file. */
+    static class Index {
+        final String subject;
+        final long[] offsets;
+        final int[] lengths;
+        final byte[] answers;
+        final byte[] optionCounts;
+        final String[] topics;
+        // Null where the source question had no id
+        final String[] ids;
+        // Identifies the file version the offsets belong to
+        long fileLength;
+        long fileModified;
+
+        Index(String subject, int size) {
+            this.subject = subject;
+            this.offsets = new long[size];
+            this.lengths = new int[size];
+            this.answers = new byte[size];
+            this.optionCounts = new byte[size];
+            this.topics = new String[size];
+            this.ids = new String[size];
+        }
+
+        int size() {
+            return offsets.length;
+        }
+    }
+
+    private final File dir;
+
+    QuestionBank(Context context) {
+        this.dir = new File(context.getFilesDir(), DIR);
+    }
+
+    /** Lowercase letters, digits, '-' and '_' only, so a subject can't name a path outside the bank. */
+    static String normalizeSubject(String subject) {
+        if (subject == null) return null;
+        String name = subject.trim().toLowerCase().replaceAll("[^a-z0-9_-]+", "-");
+        return name.isEmpty() ? null : name;
+    }
+
+    /**
+     * Replaces a subject's questions. Accepts the site's question objects; options may be an
+     * array or an {A,B,C,D} map and the answer an index or letter. Returns how many were kept.
+     */
+    synchronized int store(String subject, String questionsJson) {
+        String name = normalizeSubject(subject);
+        if (name == null) return 0;
+
+        JSONArray questions;
+        try {
+            questions = new JSONArray(questionsJson);
+        } catch (Exception e) {
+            Log.w(TAG, "Rejected malformed question list for " + name);
+            return 0;
+        }
+
+        if (!dir.exists()) dir.mkdirs();
+        File target = new File(dir, name + SUFFIX);
+        File temp = new File(dir, name + SUFFIX + ".tmp");
+        int kept = 0;
+        try {
+            BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+            try {
+                for (int i = 0; i < questions.length(); i++) {
+                    JSONObject normalized = normalize(questions.optJSONObject(i));
+                    if (normalized == null) continue;
+                    out.write(normalized.toString().getBytes("UTF-8"));
+                    out.write('\n');
+                    kept++;
+                }
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(target)) {
+                throw new IOException("rename failed");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not save questions for " + name, e);
+            temp.delete();
+            return 0;
+        }
+        return kept;
+    }
+
+    private static JSONObject normalize(JSONObject source) {
+        if (source == null) return null;
+        try {
+            String text = source.optString("question", source.optString("q", ""));
+            if (text.isEmpty()) return null;
+
+            JSONArray options = new JSONArray();
+            Object raw = source.opt("options");
+            if (raw == null) raw = source.opt("o");
+            if (raw instanceof JSONArray) {
+                JSONArray list = (JSONArray) raw;
+                for (int i = 0; i < list.length() && i < MAX_OPTIONS; i++) {
+                    options.put(list.optString(i));
+                }
+            } else if (raw instanceof JSONObject) {
+                JSONObject map = (JSONObject) raw;
+                for (char letter = 'a'; letter < 'a' + MAX_OPTIONS; letter++) {
+                    String key = String.valueOf(letter);
+                    if (map.has(key)) {
+                        options.put(map.optString(key));
+                    } else if (map.has(key.toUpperCase())) {
+                        options.put(map.optString(key.toUpperCase()));
+                    } else {
+                        break;
+                    }
+                }
+            }
+            if (options.length() < 2) return null;
+
+            int answer = answerIndex(source.opt(source.has("answer") ? "answer" : "a"));
+            if (answer < 0 || answer >= options.length()) return null;
+
+            JSONObject question = new JSONObject();
+            question.put("id", source.optString("id", ""));
+            question.put("q", text);
+            question.put("o", options);
+            question.put("a", answer);
+            question.put("t", source.optString("topic", source.optString("t", "General")));
+            return question;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static int answerIndex(Object answer) {
+        if (answer instanceof Number) {
+            return ((Number) answer).intValue();
+        }
+        if (answer instanceof String) {
+            String value = ((String) answer).trim().toLowerCase();
+            if (value.length() == 1 && value.charAt(0) >= 'a' && value.charAt(0) < 'a' + MAX_OPTIONS) {
+                return value.charAt(0) - 'a';
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /** Subjects with saved questions and how many each has, as a JSON array. */
+    synchronized String listSubjects() {
+        JSONArray subjects = new JSONArray();
+        File[] files = dir.listFiles();
+        if (files == null) return subjects.toString();
+        Arrays.sort(files);
+        for (File file : files) {
+            String fileName = file.getName();
+            if (!fileName.endsWith(SUFFIX)) continue;
+            try {
+                JSONObject subject = new JSONObject();
+                subject.put("subject", fileName.substring(0, fileName.length() - SUFFIX.length()));
+                subject.put("count", countLines(file));
+                subjects.put(subject);
+            } catch (Exception e) {
+                // Skip unreadable subject
+            }
+        }
+        return subjects.toString();
+    }
+
+    private static int countLines(File file) throws IOException {
+        int lines = 0;
+        byte[] buffer = new byte[8192];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') lines++;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return lines;
+    }
+
+    /** Scans a subject file once, or returns null if the subject has no questions. */
+    synchronized Index index(String subject) {
+        String name = normalizeSubject(subject);
+        if (name == null) return null;
+        File file = new File(dir, name + SUFFIX);
+        if (!file.exists()) return null;
+
+        try {
+            byte[] data = readFully(file);
+            int count = 0;
+            for (byte b : data) {
+                if (b == '\n') count++;
+            }
+            if (count == 0) return null;
+
+            Index index = new Index(name, count);
+            index.fileLength = data.length;
+            index.fileModified = file.lastModified();
+            int start = 0;
+            int n = 0;
+            for (int i = 0; i < data.length && n < count; i++) {
+                if (data[i] != '\n') continue;
+                JSONObject question = new JSONObject(new String(data, start, i - start, "UTF-8"));
+                index.offsets[n] = start;
+                index.lengths[n] = i - start;
+                index.answers[n] = (byte) question.getInt("a");
+                index.optionCounts[n] = (byte) question.getJSONArray("o").length();
+                index.topics[n] = question.optString("t", "General");
+                String id = question.optString("id", "");
+                index.ids[n] = id.isEmpty() ? null : id;
+                n++;
+                start = i + 1;
+            }
+            return index;
+        } catch (Exception e) {
+            Log.e(TAG, "Could not index questions for " + name, e);
+            return null;
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads back the question stored at {@code offset} in a subject file, or null if the
+     * file no longer has the length and timestamp the offset was taken from.
+     */
+    synchronized JSONObject read(String subject, long fileLength, long fileModified, long offset, int length) {
+        File file = new File(dir, subject + SUFFIX);
+        if (file.length() != fileLength || file.lastModified() != fileModified) {
+            return null;
+        }
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                byte[] line = new byte[length];
+                in.seek(offset);
+                in.readFully(line);
+                return new JSONObject(new String(line, "UTF-8"));
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Could not read question from " + subject, e);
+            return null;
+        }
+    }
+}
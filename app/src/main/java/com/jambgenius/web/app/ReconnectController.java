@@ -0,0 +1,139 @@
+package com.jambgenius.web.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import org.json.JSONObject;
+
+/**
+ * Handles connectivity coming back without throwing away the current page. A live
+ * page gets an "online" event and resumes its own requests; only when the offline
+ * shell is showing do we navigate, and then back to the last real route rather
+ * than the site root. Must be used from the UI thread.
+ */
+class ReconnectController {
+    private static final String PREFS_NAME = "JambGeniusReconnect";
+    private static final String KEY_LAST_URL = "last_url";
+    private static final String KEY_SCROLL_Y = "scroll_y";
+    private static final String KEY_APP_STATE = "app_state";
+    private static final long FLAP_WINDOW_MS = 1500;
+
+    private final SharedPreferences prefs;
+    private final String baseUrl;
+    private final String host;
+    private final Runnable deferredReconnect;
+    private String lastUrl;
+    private int scrollY;
+    private String appState;
+    private boolean wasOffline;
+    private boolean resumePending;
+    private long lastReconnectAt;
+
+    /** {@code deferredReconnect} is posted when a reconnect lands inside the flap window. */
+    ReconnectController(Context context, String baseUrl, Runnable deferredReconnect) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.deferredReconnect = deferredReconnect;
+        this.baseUrl = baseUrl;
+        this.host = Uri.parse(baseUrl).getHost();
+        this.lastUrl = prefs.getString(KEY_LAST_URL, null);
+        this.scrollY = prefs.getInt(KEY_SCROLL_Y, 0);
+        this.appState = prefs.getString(KEY_APP_STATE, null);
+    }
+
+    /** True for pages of the site itself, as opposed to the offline shell or blank pages. */
+    boolean isRealPage(String url) {
+        if (url == null) return false;
+        Uri uri = Uri.parse(url);
+        String scheme = uri.getScheme();
+        return ("https".equals(scheme) || "http".equals(scheme)) && host != null && host.equals(uri.getHost());
+    }
+
+    /** Remembers the current route, including SPA history pushes that never finish a page load. */
+    void onRouteChanged(String url) {
+        if (!isRealPage(url) || url.equals(lastUrl)) return;
+        lastUrl = url;
+        if (!resumePending) scrollY = 0;
+    }
+
+    void onPageFinished(WebView webView, String url) {
+        if (!isRealPage(url)) return;
+        onRouteChanged(url);
+
+        if (resumePending) {
+            resumePending = false;
+            StringBuilder script = new StringBuilder();
+            if (scrollY > 0) {
+                script.append("window.scrollTo(0, ").append(scrollY).append(");");
+            }
+            if (appState != null) {
+                script.append("if (typeof window.onAppResume === 'function') { window.onAppResume(")
+                    .append(JSONObject.quote(appState)).append("); }");
+            }
+            if (script.length() > 0) {
+                webView.evaluateJavascript(script.toString(), null);
+            }
+        }
+    }
+
+    void onScrollChanged(int y) {
+        scrollY = y;
+    }
+
+    void saveAppState(String state) {
+        appState = state;
+    }
+
+    void onOffline(WebView webView) {
+        wasOffline = true;
+        webView.removeCallbacks(deferredReconnect);
+        webView.getSettings().setCacheMode(WebSettings.LOAD_CACHE_ELSE_NETWORK);
+        save();
+    }
+
+    /**
+     * Resumes after connectivity returns. Returns true if this caused a navigation.
+     * Repeated calls inside a short window (a flapping cellular link) are deferred to
+     * the end of the window unless {@code userInitiated}; the network cache mode is
+     * restored either way.
+     */
+    boolean reconnect(WebView webView, boolean offlineShellShowing, boolean userInitiated) {
+        if (!wasOffline && !offlineShellShowing && !userInitiated) return false;
+
+        webView.getSettings().setCacheMode(WebSettings.LOAD_DEFAULT);
+        webView.removeCallbacks(deferredReconnect);
+
+        long now = SystemClock.elapsedRealtime();
+        if (!userInitiated && lastReconnectAt != 0 && now - lastReconnectAt < FLAP_WINDOW_MS) {
+            webView.postDelayed(deferredReconnect, FLAP_WINDOW_MS - (now - lastReconnectAt));
+            return false;
+        }
+        lastReconnectAt = now;
+        wasOffline = false;
+
+        if (offlineShellShowing) {
+            resumePending = true;
+            webView.loadUrl(getResumeUrl());
+            return true;
+        }
+
+        webView.evaluateJavascript(
+            "window.dispatchEvent(new Event('online'));" +
+            "if (typeof window.onAppReconnect === 'function') { window.onAppReconnect(); }", null);
+        return false;
+    }
+
+    String getResumeUrl() {
+        return lastUrl != null ? lastUrl : baseUrl;
+    }
+
+    void save() {
+        prefs.edit()
+            .putString(KEY_LAST_URL, lastUrl)
+            .putInt(KEY_SCROLL_Y, scrollY)
+            .putString(KEY_APP_STATE, appState)
+            .apply();
+    }
+}
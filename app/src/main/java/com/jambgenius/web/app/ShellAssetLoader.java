@@ -0,0 +1,226 @@
+package com.jambgenius.web.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceResponse;
+import androidx.webkit.WebViewAssetLoader;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Serves the app shell snapshot bundled under assets/shell as if it came from the
+ * site origin, so first paint does not wait for the network. Entries whose network
+ * copy has changed since the snapshot are marked superseded and left to the network.
+ */
+class ShellAssetLoader {
+    private static final String TAG = "JambGenius-Shell";
+    private static final String MANIFEST_ASSET = "shell/manifest.json";
+    private static final String PREFS_NAME = "JambGeniusShell";
+    private static final String KEY_BUNDLE_VERSION = "bundle_version";
+    private static final String KEY_SUPERSEDED = "superseded";
+    private static final int REVALIDATE_TIMEOUT_MS = 10000;
+    private static final int REVALIDATE_THREADS = 4;
+
+    private final Context context;
+    private final String baseUrl;
+    private final SharedPreferences prefs;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<String> superseded = new HashSet<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(REVALIDATE_THREADS);
+    private final WebViewAssetLoader assetLoader;
+    private long bundleVersion;
+    private volatile boolean offline;
+    private boolean revalidated;
+
+    private static class Entry {
+        final String asset;
+        final String mimeType;
+        final String etag;
+
+        Entry(String asset, String mimeType, String etag) {
+            this.asset = asset;
+            this.mimeType = mimeType;
+            this.etag = etag;
+        }
+    }
+
+    ShellAssetLoader(Context context, String baseUrl) {
+        this.context = context.getApplicationContext();
+        this.baseUrl = baseUrl;
+        this.prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+        loadManifest();
+
+        assetLoader = new WebViewAssetLoader.Builder()
+            .setDomain(Uri.parse(baseUrl).getHost())
+            .addPathHandler("/", new WebViewAssetLoader.PathHandler() {
+                @Override
+                public WebResourceResponse handle(String path) {
+                    return serve("/" + path);
+                }
+            })
+            .build();
+    }
+
+    private void loadManifest() {
+        try {
+            JSONObject manifest = new JSONObject(new String(readAll(context.getAssets().open(MANIFEST_ASSET)), "UTF-8"));
+            bundleVersion = manifest.optLong("version", 0);
+            JSONArray files = manifest.optJSONArray("files");
+            if (files != null) {
+                for (int i = 0; i < files.length(); i++) {
+                    JSONObject file = files.getJSONObject(i);
+                    entries.put(file.getString("path"),
+                        new Entry(file.getString("asset"), file.optString("mime", "text/html"), file.optString("etag", "")));
+                }
+            }
+        } catch (Exception e) {
+            Log.d(TAG, "No bundled app shell: " + e.getMessage());
+            return;
+        }
+
+        if (prefs.getLong(KEY_BUNDLE_VERSION, -1) != bundleVersion) {
+            prefs.edit()
+                .putLong(KEY_BUNDLE_VERSION, bundleVersion)
+                .remove(KEY_SUPERSEDED)
+                .apply();
+        } else {
+            superseded.addAll(prefs.getStringSet(KEY_SUPERSEDED, new HashSet<String>()));
+        }
+    }
+
+    /** True if the bundle has the site root, so an offline launch can load it from here. */
+    boolean hasShell() {
+        return entries.containsKey("/");
+    }
+
+    void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    WebResourceResponse shouldInterceptRequest(Uri url) {
+        if (entries.isEmpty()) return null;
+        return assetLoader.shouldInterceptRequest(url);
+    }
+
+    private WebResourceResponse serve(String path) {
+        Entry entry = entries.get(path);
+        if (entry == null) return null;
+
+        // A superseded entry still beats an error page while offline.
+        synchronized (superseded) {
+            if (superseded.contains(path) && !offline) return null;
+        }
+
+        try {
+            InputStream stream = new GZIPInputStream(context.getAssets().open(entry.asset));
+            String encoding = entry.mimeType.startsWith("text/") || entry.mimeType.endsWith("javascript") ? "utf-8" : null;
+            return new WebResourceResponse(entry.mimeType, encoding, stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to open " + entry.asset, e);
+            return null;
+        }
+    }
+
+    /**
+     * Checks each bundled entry against the network once per process and marks the
+     * ones whose ETag has moved on, so later loads use the newer network copy. HTML
+     * entries go first since they decide what the next load asks for; the remaining
+     * assets are then checked in parallel.
+     */
+    void revalidate() {
+        if (entries.isEmpty() || revalidated) return;
+        revalidated = true;
+
+        final Map<String, Entry> pages = new HashMap<>();
+        final Map<String, Entry> assets = new HashMap<>();
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            if (item.getValue().mimeType.equals("text/html")) {
+                pages.put(item.getKey(), item.getValue());
+            } else {
+                assets.put(item.getKey(), item.getValue());
+            }
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<String, Entry> item : pages.entrySet()) {
+                    checkEntry(item.getKey(), item.getValue());
+                }
+                for (final Map.Entry<String, Entry> item : assets.entrySet()) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            checkEntry(item.getKey(), item.getValue());
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void checkEntry(String path, Entry entry) {
+        if (!isNewerOnNetwork(path, entry)) return;
+        synchronized (superseded) {
+            superseded.add(path);
+            prefs.edit().putStringSet(KEY_SUPERSEDED, new HashSet<>(superseded)).apply();
+        }
+        Log.d(TAG, "Network shell is newer for " + path);
+    }
+
+    private boolean isNewerOnNetwork(String path, Entry entry) {
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            conn.setRequestMethod("HEAD");
+            conn.setConnectTimeout(REVALIDATE_TIMEOUT_MS);
+            conn.setReadTimeout(REVALIDATE_TIMEOUT_MS);
+            if (!entry.etag.isEmpty()) {
+                conn.setRequestProperty("If-None-Match", entry.etag);
+            }
+            int code = conn.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) return false;
+
+            String etag = conn.getHeaderField("ETag");
+            return entry.etag.isEmpty() || etag == null || !etag.equals(entry.etag);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (conn != null) conn.disconnect();
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
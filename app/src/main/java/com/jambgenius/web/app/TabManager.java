@@ -0,0 +1,289 @@
+package com.jambgenius.web.app;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Message;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.WebChromeClient;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import android.widget.FrameLayout;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hosts windows the site opens (window.open, target=_blank) in extra WebViews
+ * stacked over the main one, so checkout or sign-in popups don't replace the exam
+ * page. At most {@link #MAX_LIVE_TABS} child WebViews are alive at once; the least
+ * recently used background tab is saved and destroyed to make room, and restored
+ * when the user comes back to it. Only windows opened by a user gesture are
+ * hosted. Must be used from the UI thread, except {@link #getStats()}.
+ */
+class TabManager {
+    static final int MAX_LIVE_TABS = 3;
+    static final int MAX_TABS = 8;
+
+    interface Host {
+        /** Applies the app's WebView settings, cookies and download handling to a new tab. */
+        void configureTab(WebView webView);
+
+        /** Returns true if the URL was handed off outside the app and must not load in a tab. */
+        boolean handleExternalUrl(String url);
+    }
+
+    private static class Tab {
+        final int id;
+        WebView webView;
+        Bundle savedState;
+        String url;
+        long lastUsed;
+        // Largest growth of the whole process heap between this tab's creation and one of its
+        // page loads. Other tabs and the main page allocate in the same window and renderers
+        // are out of process, so this is a process-level sample, not what the tab costs.
+        long processHeapGrowth;
+        long heapAtCreate;
+
+        Tab(int id) {
+            this.id = id;
+        }
+    }
+
+    private final Context context;
+    private final FrameLayout container;
+    private final Host host;
+    // Bottom to top; the last tab is the one on screen
+    private final List<Tab> stack = new ArrayList<>();
+    private int nextId = 1;
+    private int evictions;
+    private int restores;
+    // Rebuilt on the UI thread after every change so the bridge can read it without hopping threads
+    private volatile String statsSnapshot = "{}";
+
+    TabManager(Context context, FrameLayout container, Host host) {
+        this.context = context;
+        this.container = container;
+        this.host = host;
+    }
+
+    /** Handles WebChromeClient.onCreateWindow for any WebView we manage. */
+    boolean openWindow(boolean isUserGesture, Message resultMsg) {
+        // Script-initiated popups could otherwise churn real tabs out of the pool
+        if (!isUserGesture) return false;
+        // Refuse rather than discard a tab the user may still go back to
+        if (stack.size() >= MAX_TABS) return false;
+
+        Tab tab = new Tab(nextId++);
+        tab.heapAtCreate = usedMemory();
+        createWebView(tab);
+        stack.add(tab);
+        touch(tab);
+        enforceLiveLimit();
+
+        WebView.WebViewTransport transport = (WebView.WebViewTransport) resultMsg.obj;
+        transport.setWebView(tab.webView);
+        resultMsg.sendToTarget();
+        publishStats();
+        return true;
+    }
+
+    private void createWebView(final Tab tab) {
+        WebView webView = new WebView(context);
+        host.configureTab(webView);
+        webView.setWebViewClient(new WebViewClient() {
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+                String url = request.getUrl().toString();
+                if (host.handleExternalUrl(url)) {
+                    // A popup whose only job was to leave the app has nothing left to show
+                    if (view.copyBackForwardList().getSize() == 0) {
+                        view.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                close(tab);
+                            }
+                        });
+                    }
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                super.onPageFinished(view, url);
+                tab.url = url;
+                tab.processHeapGrowth = Math.max(tab.processHeapGrowth, usedMemory() - tab.heapAtCreate);
+                publishStats();
+            }
+        });
+        webView.setWebChromeClient(new WebChromeClient() {
+            @Override
+            public boolean onCreateWindow(WebView view, boolean isDialog, boolean isUserGesture, Message resultMsg) {
+                return openWindow(isUserGesture, resultMsg);
+            }
+
+            @Override
+            public void onCloseWindow(WebView window) {
+                close(tab);
+            }
+        });
+        container.addView(webView, new FrameLayout.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        tab.webView = webView;
+    }
+
+    private void touch(Tab tab) {
+        tab.lastUsed = SystemClock.elapsedRealtime();
+    }
+
+    private void enforceLiveLimit() {
+        while (liveCount() > MAX_LIVE_TABS) {
+            Tab victim = null;
+            // Never evict the tab on screen
+            for (int i = 0; i < stack.size() - 1; i++) {
+                Tab tab = stack.get(i);
+                if (tab.webView != null && (victim == null || tab.lastUsed < victim.lastUsed)) {
+                    victim = tab;
+                }
+            }
+            if (victim == null) return;
+            evict(victim);
+        }
+    }
+
+    private void evict(Tab tab) {
+        Bundle state = new Bundle();
+        tab.webView.saveState(state);
+        tab.savedState = state;
+        destroyWebView(tab);
+        evictions++;
+    }
+
+    private void restore(Tab tab) {
+        tab.heapAtCreate = usedMemory();
+        createWebView(tab);
+        if (tab.savedState == null || tab.webView.restoreState(tab.savedState) == null) {
+            if (tab.url != null) tab.webView.loadUrl(tab.url);
+        }
+        tab.savedState = null;
+        restores++;
+    }
+
+    private void destroyWebView(Tab tab) {
+        WebView webView = tab.webView;
+        tab.webView = null;
+        if (webView == null) return;
+        container.removeView(webView);
+        webView.stopLoading();
+        webView.destroy();
+    }
+
+    private void close(Tab tab) {
+        if (!stack.remove(tab)) return;
+        destroyWebView(tab);
+        showTop();
+        publishStats();
+    }
+
+    private void showTop() {
+        if (stack.isEmpty()) return;
+        Tab top = stack.get(stack.size() - 1);
+        if (top.webView == null) {
+            restore(top);
+            enforceLiveLimit();
+        }
+        top.webView.setVisibility(View.VISIBLE);
+        top.webView.bringToFront();
+        touch(top);
+    }
+
+    private int liveCount() {
+        int live = 0;
+        for (Tab tab : stack) {
+            if (tab.webView != null) live++;
+        }
+        return live;
+    }
+
+    boolean hasTabs() {
+        return !stack.isEmpty();
+    }
+
+    /** Goes back in the top tab, closing it when it has no history. Returns false if no tab is open. */
+    boolean onBackPressed() {
+        if (stack.isEmpty()) return false;
+        Tab top = stack.get(stack.size() - 1);
+        if (top.webView != null && top.webView.canGoBack()) {
+            top.webView.goBack();
+        } else {
+            close(top);
+        }
+        return true;
+    }
+
+    void onPause() {
+        for (Tab tab : stack) {
+            if (tab.webView != null) tab.webView.onPause();
+        }
+    }
+
+    void onResume() {
+        for (Tab tab : stack) {
+            if (tab.webView != null) tab.webView.onResume();
+        }
+    }
+
+    void destroyAll() {
+        for (Tab tab : stack) {
+            destroyWebView(tab);
+        }
+        stack.clear();
+        publishStats();
+    }
+
+    /** Safe from any thread. */
+    String getStats() {
+        return statsSnapshot;
+    }
+
+    private void publishStats() {
+        statsSnapshot = buildStats();
+    }
+
+    private String buildStats() {
+        try {
+            JSONObject stats = new JSONObject();
+            stats.put("open", stack.size());
+            stats.put("live", liveCount());
+            stats.put("maxLive", MAX_LIVE_TABS);
+            stats.put("evictions", evictions);
+            stats.put("restores", restores);
+            JSONArray tabs = new JSONArray();
+            for (Tab tab : stack) {
+                JSONObject item = new JSONObject();
+                item.put("id", tab.id);
+                item.put("url", tab.url != null ? tab.url : "");
+                item.put("live", tab.webView != null);
+                item.put("processHeapGrowthKb", tab.processHeapGrowth / 1024);
+                tabs.put(item);
+            }
+            stats.put("tabs", tabs);
+            return stats.toString();
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+
+    /** Process-wide native plus Java heap in use; WebView renderers live elsewhere, so this is the in-process share only. */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return Debug.getNativeHeapAllocatedSize() + runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,18 @@
+package com.jambgenius.web.app;
+
+import androidx.webkit.WebViewFeature;
+
+/** WebViewFeature checks that treat a missing or broken WebView provider as "unsupported". */
+final class WebViewFeatures {
+    private WebViewFeatures() {
+    }
+
+    static boolean isFeatureSupported(String feature) {
+        try {
+            return WebViewFeature.isFeatureSupported(feature);
+        } catch (RuntimeException e) {
+            // No usable WebView provider (e.g. being updated, or a JVM test run)
+            return false;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.jambgenius.web.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.core.app.ApplicationProvider;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+@RunWith(RobolectricTestRunner.class)
+public class AnalyticsPipelineTest {
+    private static final int EVENTS = 120;
+    // Roughly 40 compressed bytes per small event, with headroom
+    private static final long UPLOAD_BYTES_BUDGET = EVENTS * 60;
+
+    private LocalOrigin collector;
+    private AnalyticsPipeline pipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        collector = new LocalOrigin();
+        pipeline = new AnalyticsPipeline(ApplicationProvider.getApplicationContext(), null, collector.url("/api/events"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pipeline.shutdown();
+        collector.close();
+    }
+
+    private void trackEvents(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            pipeline.track("question_viewed", "{\"index\":" + i + ",\"subject\":\"chemistry\"}", false);
+        }
+        pipeline.flush().get(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void uploadsOneRequestPerBatchNotPerEvent() throws Exception {
+        collector.setProfile(LocalOrigin.Profile.UMTS_3G);
+
+        trackEvents(EVENTS);
+
+        int expectedBatches = (EVENTS + AnalyticsPipeline.BATCH_SIZE - 1) / AnalyticsPipeline.BATCH_SIZE;
+        assertEquals(expectedBatches, collector.requestCount());
+        assertTrue("uploaded " + collector.bytesReceived() + " bytes", collector.bytesReceived() < UPLOAD_BYTES_BUDGET);
+
+        JSONObject stats = new JSONObject(pipeline.getStats());
+        assertEquals(EVENTS, stats.getInt("uploaded"));
+        assertEquals(0, stats.getInt("buffered"));
+    }
+
+    @Test
+    public void holdsEventsThroughAnOutage() throws Exception {
+        collector.setOutage(true);
+        trackEvents(EVENTS);
+
+        JSONObject stats = new JSONObject(pipeline.getStats());
+        assertEquals(EVENTS, stats.getInt("buffered"));
+        assertEquals(0, stats.getInt("dropped"));
+
+        collector.setOutage(false);
+        pipeline.flush().get(30, TimeUnit.SECONDS);
+
+        stats = new JSONObject(pipeline.getStats());
+        assertEquals(EVENTS, stats.getInt("uploaded"));
+        assertEquals(0, stats.getInt("buffered"));
+    }
+
+    @Test
+    public void dropsBatchesTheCollectorRejects() throws Exception {
+        collector.setRoute(new LocalOrigin.Route() {
+            @Override
+            public MockResponse respond(RecordedRequest request) {
+                return new MockResponse().setResponseCode(400);
+            }
+        });
+
+        trackEvents(10);
+
+        JSONObject stats = new JSONObject(pipeline.getStats());
+        assertEquals(10, stats.getInt("dropped"));
+        assertEquals(0, stats.getInt("buffered"));
+        assertEquals(1, collector.requestCount());
+    }
+
+    @Test
+    public void keepsBatchesWhenTheEndpointIsMissing() throws Exception {
+        collector.setRoute(new LocalOrigin.Route() {
+            @Override
+            public MockResponse respond(RecordedRequest request) {
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+
+        trackEvents(10);
+
+        JSONObject stats = new JSONObject(pipeline.getStats());
+        assertEquals(0, stats.getInt("dropped"));
+        assertEquals(10, stats.getInt("buffered"));
+    }
+}
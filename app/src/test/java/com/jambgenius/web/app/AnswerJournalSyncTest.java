@@ -0,0 +1,193 @@
+package com.jambgenius.web.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import okhttp3.mockwebserver.RecordedRequest;
+
+@RunWith(RobolectricTestRunner.class)
+public class AnswerJournalSyncTest {
+    private static final int ANSWERS = 250;
+    private static final int MAX_SYNC_ATTEMPTS = 20;
+    // Gzip'd JSON for a 250-answer session should stay well under this on the wire
+    private static final long SYNC_BYTES_BUDGET = 16 * 1024;
+
+    private Context context;
+    private LocalOrigin origin;
+    private AnswerJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        context = ApplicationProvider.getApplicationContext();
+        origin = new LocalOrigin();
+        journal = new AnswerJournal(context, origin.url("/api/journal/sync"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.shutdown();
+        origin.close();
+    }
+
+    private void recordSession() throws Exception {
+        for (int i = 0; i < ANSWERS; i++) {
+            journal.recordAnswer("{\"questionId\":" + i + ",\"subject\":\"physics\",\"correct\":" + (i % 3 == 0) + "}");
+        }
+        journal.flush().get(5, TimeUnit.SECONDS);
+    }
+
+    private void syncUntilDrained() throws Exception {
+        for (int i = 0; i < MAX_SYNC_ATTEMPTS && journal.getPendingSyncCount() > 0; i++) {
+            journal.sync().get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Set<Long> uploadedSequences(Iterable<RecordedRequest> requests) throws Exception {
+        Set<Long> sequences = new HashSet<>();
+        for (RecordedRequest request : requests) {
+            JSONArray records = new JSONObject(gunzip(request)).getJSONArray("records");
+            for (int i = 0; i < records.length(); i++) {
+                sequences.add(records.getJSONObject(i).getLong("seq"));
+            }
+        }
+        return sequences;
+    }
+
+    private static String gunzip(RecordedRequest request) throws Exception {
+        InputStream in = new GZIPInputStream(request.getBody().inputStream());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void batchesAWholeSessionIntoFewCompressedRequests() throws Exception {
+        origin.setProfile(LocalOrigin.Profile.UMTS_3G);
+        recordSession();
+
+        syncUntilDrained();
+
+        int expectedBatches = (ANSWERS + AnswerJournal.SYNC_BATCH_SIZE - 1) / AnswerJournal.SYNC_BATCH_SIZE;
+        assertEquals(expectedBatches, origin.requestCount());
+        assertTrue("sync used " + origin.bytesReceived() + " bytes", origin.bytesReceived() < SYNC_BYTES_BUDGET);
+        assertEquals(ANSWERS, uploadedSequences(origin.handledRequests()).size());
+        assertEquals(0, journal.getPendingSyncCount());
+    }
+
+    @Test
+    public void retriesAfterLostResponsesWithStableIdempotencyKeys() throws Exception {
+        origin.setProfile(LocalOrigin.Profile.EDGE_2G);
+        origin.setLossRate(0.3);
+        recordSession();
+
+        syncUntilDrained();
+
+        assertEquals(0, journal.getPendingSyncCount());
+        assertEquals(ANSWERS, uploadedSequences(origin.handledRequests()).size());
+
+        // Every retry of a range must reuse that range's key so the server can dedupe
+        Set<String> keys = new HashSet<>();
+        for (RecordedRequest request : origin.handledRequests()) {
+            JSONObject body = new JSONObject(gunzip(request));
+            String key = request.getHeader("Idempotency-Key");
+            assertEquals(body.getString("install") + ":" + body.getLong("firstSeq") + "-" + body.getLong("lastSeq"), key);
+            keys.add(key);
+        }
+        int expectedBatches = (ANSWERS + AnswerJournal.SYNC_BATCH_SIZE - 1) / AnswerJournal.SYNC_BATCH_SIZE;
+        assertEquals(expectedBatches, keys.size());
+    }
+
+    @Test
+    public void keepsEverythingThroughAnOutage() throws Exception {
+        origin.setOutage(true);
+        recordSession();
+
+        journal.sync().get(30, TimeUnit.SECONDS);
+        assertEquals(ANSWERS, journal.getPendingSyncCount());
+
+        origin.setOutage(false);
+        syncUntilDrained();
+
+        assertEquals(0, journal.getPendingSyncCount());
+        assertEquals(ANSWERS, uploadedSequences(origin.handledRequests()).size());
+    }
+
+    @Test
+    public void summaryReflectsJournalledAnswers() throws Exception {
+        recordSession();
+
+        JSONObject summary = new JSONObject(journal.getSummary());
+        assertEquals(ANSWERS, summary.getInt("answered"));
+        assertEquals((ANSWERS + 2) / 3, summary.getInt("correct"));
+        assertEquals(ANSWERS, summary.getJSONObject("subjects").getJSONObject("physics").getInt("answered"));
+    }
+
+    @Test
+    public void totalsSurviveCompactionAndRestart() throws Exception {
+        int answers = AnswerJournal.MAX_RETAINED_RECORDS + 150;
+        for (int i = 0; i < answers; i++) {
+            journal.recordAnswer("{\"questionId\":" + i + ",\"subject\":\"english\",\"correct\":true}");
+        }
+        journal.flush().get(30, TimeUnit.SECONDS);
+        syncUntilDrained();
+        journal.shutdown();
+
+        journal = new AnswerJournal(context, origin.url("/api/journal/sync"));
+
+        assertEquals(0, journal.getPendingSyncCount());
+        JSONObject summary = new JSONObject(journal.getSummary());
+        assertEquals(answers, summary.getInt("answered"));
+        assertEquals(answers, summary.getInt("correct"));
+        assertEquals(answers + 1, journal.recordAnswer("{\"subject\":\"english\"}"));
+    }
+
+    @Test
+    public void clearedDataStartsANewKeySpace() throws Exception {
+        recordSession();
+        syncUntilDrained();
+        journal.shutdown();
+        int firstInstallRequests = origin.handledRequests().size();
+
+        // Clear data wipes the journal and its prefs, but ANDROID_ID stays the same
+        new File(context.getFilesDir(), "journal/answers.log").delete();
+        context.getSharedPreferences("JambGeniusJournal", Context.MODE_PRIVATE).edit().clear().commit();
+        journal = new AnswerJournal(context, origin.url("/api/journal/sync"));
+        recordSession();
+        syncUntilDrained();
+
+        List<RecordedRequest> requests = origin.handledRequests();
+        Set<String> firstKeys = new HashSet<>();
+        for (RecordedRequest request : requests.subList(0, firstInstallRequests)) {
+            firstKeys.add(request.getHeader("Idempotency-Key"));
+        }
+        for (RecordedRequest request : requests.subList(firstInstallRequests, requests.size())) {
+            // Same seq ranges as before, so only a fresh install id keeps them apart
+            assertFalse(firstKeys.contains(request.getHeader("Idempotency-Key")));
+        }
+        assertEquals(0, journal.getPendingSyncCount());
+    }
+}
@@ -0,0 +1,69 @@
+package com.jambgenius.web.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.webkit.WebView;
+import androidx.test.core.app.ApplicationProvider;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class DeepLinkRouterTest {
+    private DeepLinkRouter router;
+    private WebView webView;
+
+    @Before
+    public void setUp() {
+        router = new DeepLinkRouter("https://jambgenius.vercel.app");
+        webView = new WebView(ApplicationProvider.getApplicationContext());
+        router.attach(webView);
+    }
+
+    @Test
+    public void mapsAppSchemeSiteUrlsAndPathsToRoutes() {
+        assertEquals("/exam/physics?year=2023", router.toRoute("jambgenius://exam/physics?year=2023"));
+        assertEquals("/leaderboard", router.toRoute("https://jambgenius.vercel.app/leaderboard"));
+        assertEquals("/", router.toRoute("https://jambgenius.vercel.app"));
+        assertEquals("/news#latest", router.toRoute("/news#latest"));
+        assertNull(router.toRoute("https://example.com/exam"));
+        assertFalse(router.route("https://example.com/exam"));
+    }
+
+    @Test
+    public void queuesLinksUntilThePageIsReady() {
+        assertTrue(router.route("jambgenius://exam/chemistry"));
+        assertNull(shadowOf(webView).getLastEvaluatedJavascript());
+
+        router.onPageReady();
+
+        String script = shadowOf(webView).getLastEvaluatedJavascript();
+        assertTrue(script.contains("history.pushState"));
+        assertTrue(script.contains(JSONObject.quote("/exam/chemistry")));
+    }
+
+    @Test
+    public void navigatesInPlaceWhenLive() {
+        router.onPageReady();
+
+        router.route("/practice/biology");
+
+        assertTrue(shadowOf(webView).getLastEvaluatedJavascript().contains(JSONObject.quote("/practice/biology")));
+    }
+
+    @Test
+    public void passesAuthTokensToTheCallback() {
+        router.onPageReady();
+
+        router.route("jambgenius://auth/callback?token=abc'123");
+
+        String script = shadowOf(webView).getLastEvaluatedJavascript();
+        assertTrue(script.contains("handleAuthCallback(\"abc'123\")"));
+    }
+}
@@ -0,0 +1,131 @@
+package com.jambgenius.web.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ExamEngineTest {
+    private static final String[] SUBJECTS = { "english", "physics", "chemistry", "biology" };
+
+    private QuestionBank bank;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        bank = new QuestionBank(context);
+        for (String subject : SUBJECTS) {
+            JSONArray questions = new JSONArray();
+            for (int i = 0; i < 120; i++) {
+                JSONObject question = new JSONObject();
+                question.put("id", subject + "-" + i);
+                question.put("question", subject + " question " + i);
+                question.put("options", new JSONArray().put("right " + i).put("wrong a").put("wrong b").put("wrong c"));
+                question.put("answer", "A");
+                question.put("topic", "Topic " + (i % 6));
+                questions.put(question);
+            }
+            assertEquals(120, bank.store(subject, questions.toString()));
+        }
+    }
+
+    private static String otherSubjects() {
+        return new JSONArray().put("physics").put("chemistry").put("biology").toString();
+    }
+
+    @Test
+    public void assemblesAFullJambPaper() throws Exception {
+        ExamEngine engine = new ExamEngine(bank, null);
+        JSONObject paper = new JSONObject(engine.start(otherSubjects(), 42));
+
+        assertEquals(180, paper.getInt("total"));
+        JSONArray sections = paper.getJSONArray("subjects");
+        assertEquals("english", sections.getJSONObject(0).getString("subject"));
+        assertEquals(60, sections.getJSONObject(0).getInt("count"));
+        for (int s = 1; s < 4; s++) {
+            assertEquals(40, sections.getJSONObject(s).getInt("count"));
+        }
+    }
+
+    @Test
+    public void sameSeedGivesSamePaper() throws Exception {
+        ExamEngine first = new ExamEngine(bank, null);
+        ExamEngine second = new ExamEngine(bank, null);
+        first.start(otherSubjects(), 7);
+        second.start(otherSubjects(), 7);
+
+        for (int i = 0; i < 180; i += 17) {
+            assertEquals(first.question(i), second.question(i));
+        }
+    }
+
+    @Test
+    public void gradesScalesTo400AndJournalsAnswers() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        // Never synced in this test, so the endpoint is never contacted
+        AnswerJournal journal = new AnswerJournal(context, "http://127.0.0.1:9/api/journal/sync");
+        ExamEngine engine = new ExamEngine(bank, journal);
+        engine.start(otherSubjects(), 99);
+
+        // Answer every English question correctly and nothing else
+        for (int i = 0; i < 60; i++) {
+            JSONObject question = new JSONObject(engine.question(i));
+            JSONArray options = question.getJSONArray("options");
+            for (int o = 0; o < options.length(); o++) {
+                if (options.getString(o).startsWith("right")) {
+                    assertTrue(engine.answer(i, o));
+                }
+            }
+        }
+        assertFalse(engine.answer(0, 4));
+
+        JSONObject result = new JSONObject(engine.submit());
+        assertEquals(100, result.getInt("score"));
+        assertEquals(400, result.getInt("maxScore"));
+        assertEquals(60, result.getInt("answered"));
+        assertTrue(result.has("submitMicros"));
+
+        int topicTotal = 0;
+        JSONArray topics = result.getJSONArray("topics");
+        for (int t = 0; t < topics.length(); t++) {
+            topicTotal += topics.getJSONObject(t).getInt("total");
+        }
+        assertEquals(180, topicTotal);
+        assertFalse(engine.isActive());
+
+        JSONObject summary = new JSONObject(journal.getSummary());
+        assertEquals(60, summary.getInt("answered"));
+        assertEquals(60, summary.getInt("correct"));
+        journal.shutdown();
+    }
+
+    @Test
+    public void resavedSubjectInvalidatesCopiedOffsets() throws Exception {
+        ExamEngine engine = new ExamEngine(bank, null);
+        engine.start(otherSubjects(), 42);
+        assertFalse(new JSONObject(engine.question(0)).has("error"));
+
+        JSONArray replacement = new JSONArray().put(new JSONObject()
+            .put("question", "new").put("options", new JSONArray().put("a").put("b")).put("answer", 0));
+        assertEquals(1, bank.store("english", replacement.toString()));
+
+        assertTrue(new JSONObject(engine.question(0)).has("error"));
+    }
+
+    @Test
+    public void indexKeepsQuestionIds() {
+        QuestionBank.Index index = bank.index("physics");
+        assertEquals(120, index.size());
+        assertEquals("physics-0", index.ids[0]);
+        assertEquals("physics-119", index.ids[119]);
+    }
+}
@@ -0,0 +1,165 @@
+package com.jambgenius.web.app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * Local stand-in for the site origin. Simulates slow links, lost responses and
+ * outages, and keeps the request and byte counts the performance budgets assert on.
+ */
+final class LocalOrigin implements Closeable {
+
+    /** Link shapes; latency is applied to response headers, bandwidth to the body. */
+    enum Profile {
+        LAN(0, 0),
+        UMTS_3G(200, 96 * 1024),
+        EDGE_2G(600, 6 * 1024);
+
+        final long latencyMs;
+        final long bytesPerSecond;
+
+        Profile(long latencyMs, long bytesPerSecond) {
+            this.latencyMs = latencyMs;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+    }
+
+    interface Route {
+        MockResponse respond(RecordedRequest request);
+    }
+
+    private final MockWebServer server = new MockWebServer();
+    private final Random random = new Random(42);
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger droppedCount = new AtomicInteger();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final List<RecordedRequest> handled = Collections.synchronizedList(new ArrayList<RecordedRequest>());
+    private volatile Profile profile = Profile.LAN;
+    private volatile double lossRate;
+    private volatile boolean outage;
+    private volatile Route route = new Route() {
+        @Override
+        public MockResponse respond(RecordedRequest request) {
+            return new MockResponse().setResponseCode(200).setBody("{}");
+        }
+    };
+
+    LocalOrigin() throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return handle(request);
+            }
+
+            @Override
+            public MockResponse peek() {
+                if (outage) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START);
+                }
+                return super.peek();
+            }
+        });
+        server.start();
+    }
+
+    private MockResponse handle(RecordedRequest request) {
+        requestCount.incrementAndGet();
+        bytesReceived.addAndGet(request.getBodySize());
+
+        if (outage) {
+            droppedCount.incrementAndGet();
+            return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START);
+        }
+
+        boolean lost;
+        synchronized (random) {
+            lost = lossRate > 0 && random.nextDouble() < lossRate;
+        }
+
+        // A lost response still reached the server: the client must not double-apply it on retry
+        handled.add(request);
+        MockResponse response = route.respond(request);
+        if (lost) {
+            droppedCount.incrementAndGet();
+            return response.setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+        }
+
+        Profile link = profile;
+        if (link.latencyMs > 0) {
+            response.setHeadersDelay(link.latencyMs, TimeUnit.MILLISECONDS);
+        }
+        if (link.bytesPerSecond > 0) {
+            response.throttleBody(link.bytesPerSecond / 10, 100, TimeUnit.MILLISECONDS);
+        }
+        bytesSent.addAndGet(response.getBody() != null ? response.getBody().size() : 0);
+        return response;
+    }
+
+    String url(String path) {
+        return server.url(path).toString();
+    }
+
+    /** Scheme, host and port with no trailing slash, for code that appends its own paths. */
+    String origin() {
+        String url = url("/");
+        return url.substring(0, url.length() - 1);
+    }
+
+    void setProfile(Profile profile) {
+        this.profile = profile;
+    }
+
+    void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    void setOutage(boolean outage) {
+        this.outage = outage;
+    }
+
+    void setRoute(Route route) {
+        this.route = route;
+    }
+
+    int requestCount() {
+        return requestCount.get();
+    }
+
+    int droppedCount() {
+        return droppedCount.get();
+    }
+
+    long bytesReceived() {
+        return bytesReceived.get();
+    }
+
+    long bytesSent() {
+        return bytesSent.get();
+    }
+
+    /** Requests that reached the application, including those whose response was then lost. */
+    List<RecordedRequest> handledRequests() {
+        synchronized (handled) {
+            return new ArrayList<>(handled);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+}
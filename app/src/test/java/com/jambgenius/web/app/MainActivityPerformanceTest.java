@@ -0,0 +1,270 @@
+package com.jambgenius.web.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Looper;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import androidx.test.core.app.ApplicationProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.shadows.ShadowConnectivityManager;
+import org.robolectric.shadows.ShadowNetwork;
+import org.robolectric.shadows.ShadowNetworkCapabilities;
+import org.robolectric.shadows.ShadowNetworkInfo;
+import org.robolectric.shadows.ShadowWebView;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import okhttp3.mockwebserver.RecordedRequest;
+
+@RunWith(RobolectricTestRunner.class)
+public class MainActivityPerformanceTest {
+    private static final int ANSWERS = 250;
+    // Same session shape and wire budget as AnswerJournalSyncTest
+    private static final long SYNC_BYTES_BUDGET = 16 * 1024;
+    private static final int MAX_SYNC_POLLS = 600;
+    // Wall-clock budgets from System.nanoTime (SystemClock is frozen under Robolectric).
+    // Generous for a CI JVM, but a blocking disk or network call on these paths breaks them.
+    private static final long OFFLINE_PAGE_BUDGET_MS = 1000;
+    private static final double BRIDGE_P95_BUDGET_MS = 8.0;
+    private static final int BRIDGE_WARMUP_CALLS = 50;
+    private static final int BRIDGE_CALLS = 500;
+
+    private LocalOrigin origin;
+    private String routeUrl;
+    private ActivityController<MainActivity> controller;
+
+    @Before
+    public void setUp() throws Exception {
+        origin = new LocalOrigin();
+        routeUrl = origin.origin() + "/practice/physics";
+        MainActivity.originOverride = origin.origin();
+        // CI syncs a real shell snapshot; the offline-page tests must not depend on it
+        MainActivity.bundledShellEnabled = false;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (controller != null) {
+            controller.pause().stop().destroy();
+        }
+        MainActivity.originOverride = null;
+        MainActivity.bundledShellEnabled = true;
+        origin.close();
+    }
+
+    private static void setOnline(Context context, boolean online) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        ShadowConnectivityManager shadow = shadowOf(cm);
+        shadow.clearAllNetworks();
+        if (online) {
+            NetworkInfo info = ShadowNetworkInfo.newInstance(NetworkInfo.DetailedState.CONNECTED,
+                ConnectivityManager.TYPE_WIFI, 0, true, NetworkInfo.State.CONNECTED);
+            Network network = ShadowNetwork.newInstance(ConnectivityManager.TYPE_WIFI);
+            shadow.addNetwork(network, info);
+            shadow.setActiveNetworkInfo(info);
+            shadow.setDefaultNetworkActive(true);
+            NetworkCapabilities capabilities = ShadowNetworkCapabilities.newInstance();
+            shadowOf(capabilities).addTransportType(NetworkCapabilities.TRANSPORT_WIFI);
+            shadow.setNetworkCapabilities(network, capabilities);
+        } else {
+            shadow.setActiveNetworkInfo(null);
+            shadow.setDefaultNetworkActive(false);
+        }
+        // hasInternetConnection() reads the active network and its capabilities
+        assertEquals(online, cm.getActiveNetwork() != null);
+    }
+
+    private static void fireNetworkChange(Context context, boolean available) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        Network previous = cm.getActiveNetwork();
+        setOnline(context, available);
+        for (ConnectivityManager.NetworkCallback callback : shadowOf(cm).getNetworkCallbacks()) {
+            if (available) {
+                callback.onAvailable(cm.getActiveNetwork());
+            } else {
+                callback.onLost(previous);
+            }
+        }
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private ActivityController<MainActivity> launch(boolean online) {
+        controller = Robolectric.buildActivity(MainActivity.class);
+        setOnline(controller.get(), online);
+        controller.setup();
+        return controller;
+    }
+
+    private WebView webView() {
+        return controller.get().findViewById(R.id.webview);
+    }
+
+    private int journalRequests() {
+        int count = 0;
+        for (RecordedRequest request : origin.handledRequests()) {
+            if (request.getPath().startsWith("/api/journal/sync")) count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void offlinePageShowsWithinBudget() throws Exception {
+        // Warm up class loading and resources so the measurement is of our code
+        launch(false);
+        controller.pause().stop().destroy();
+
+        controller = Robolectric.buildActivity(MainActivity.class);
+        setOnline(controller.get(), false);
+        long start = System.nanoTime();
+        controller.setup();
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        ShadowWebView.LoadDataWithBaseURL page = shadowOf(webView()).getLastLoadDataWithBaseURL();
+        assertNotNull("offline page was not shown", page);
+        assertTrue(page.data.contains("You're Offline"));
+        assertEquals(WebSettings.LOAD_CACHE_ELSE_NETWORK, webView().getSettings().getCacheMode());
+        assertTrue("offline page took " + elapsedMs + "ms", elapsedMs < OFFLINE_PAGE_BUDGET_MS);
+    }
+
+    @Test
+    public void offlineLaunchLoadsSiteRootFromBundledShell() {
+        Context context = ApplicationProvider.getApplicationContext();
+        ShellAssetLoader shell = new ShellAssetLoader(context, origin.origin());
+        boolean bundled = shell.hasShell();
+        shell.shutdown();
+        assumeTrue("no app shell bundled", bundled);
+        MainActivity.bundledShellEnabled = true;
+
+        launch(false);
+        WebView webView = webView();
+        assertEquals(origin.origin(), shadowOf(webView).getLastLoadedUrl());
+        assertNull("offline page shown over the shell", shadowOf(webView).getLastLoadDataWithBaseURL());
+        assertEquals(WebSettings.LOAD_CACHE_ELSE_NETWORK, webView.getSettings().getCacheMode());
+    }
+
+    @Test
+    public void reconnectFromOfflinePageResumesRememberedRoute() {
+        Context context = ApplicationProvider.getApplicationContext();
+        context.getSharedPreferences("JambGeniusReconnect", Context.MODE_PRIVATE)
+            .edit().putString("last_url", routeUrl).commit();
+
+        launch(false);
+        WebView webView = webView();
+        WebViewClient client = shadowOf(webView).getWebViewClient();
+        client.onPageFinished(webView, "about:blank");
+
+        fireNetworkChange(controller.get(), true);
+
+        assertEquals(routeUrl, shadowOf(webView).getLastLoadedUrl());
+        assertEquals(WebSettings.LOAD_DEFAULT, webView.getSettings().getCacheMode());
+    }
+
+    @Test
+    public void connectionFlapOnLivePageDoesNotReload() {
+        launch(true);
+        WebView webView = webView();
+        WebViewClient client = shadowOf(webView).getWebViewClient();
+        client.onPageFinished(webView, routeUrl);
+        String loadedBefore = shadowOf(webView).getLastLoadedUrl();
+
+        fireNetworkChange(controller.get(), false);
+        assertEquals(WebSettings.LOAD_CACHE_ELSE_NETWORK, webView.getSettings().getCacheMode());
+        fireNetworkChange(controller.get(), true);
+
+        assertEquals(loadedBefore, shadowOf(webView).getLastLoadedUrl());
+        assertEquals(WebSettings.LOAD_DEFAULT, webView.getSettings().getCacheMode());
+        assertTrue(shadowOf(webView).getLastEvaluatedJavascript().contains("new Event('online')"));
+    }
+
+    @Test
+    public void losingOneNetworkDuringHandoverKeepsTheLiveCacheMode() {
+        launch(true);
+        WebView webView = webView();
+        shadowOf(webView).getWebViewClient().onPageFinished(webView, routeUrl);
+
+        // Wi-Fi drops after cellular has already taken over
+        ConnectivityManager cm = (ConnectivityManager) controller.get().getSystemService(Context.CONNECTIVITY_SERVICE);
+        for (ConnectivityManager.NetworkCallback callback : shadowOf(cm).getNetworkCallbacks()) {
+            callback.onLost(ShadowNetwork.newInstance(ConnectivityManager.TYPE_MOBILE));
+        }
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(WebSettings.LOAD_DEFAULT, webView.getSettings().getCacheMode());
+    }
+
+    @Test
+    public void bridgeCallsStayWithinLatencyBudget() throws Exception {
+        launch(true);
+        Object bridge = shadowOf(webView()).getJavascriptInterface("AndroidApp");
+        assertNotNull(bridge);
+
+        Method getUserSession = bridge.getClass().getMethod("getUserSession");
+        Method recordAnswer = bridge.getClass().getMethod("recordAnswer", String.class);
+        getUserSession.setAccessible(true);
+        recordAnswer.setAccessible(true);
+
+        for (int i = 0; i < BRIDGE_WARMUP_CALLS; i++) {
+            getUserSession.invoke(bridge);
+            recordAnswer.invoke(bridge, "{\"questionId\":" + i + ",\"correct\":true}");
+        }
+        long[] samples = new long[BRIDGE_CALLS];
+        for (int i = 0; i < BRIDGE_CALLS; i++) {
+            long start = System.nanoTime();
+            getUserSession.invoke(bridge);
+            recordAnswer.invoke(bridge, "{\"questionId\":" + i + ",\"correct\":true}");
+            samples[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(samples);
+        double p95Ms = samples[(int) (BRIDGE_CALLS * 0.95)] / 1e6;
+        assertTrue("bridge p95 was " + p95Ms + "ms", p95Ms < BRIDGE_P95_BUDGET_MS);
+    }
+
+    @Test
+    public void bridgeAnswersStayLocalUntilSyncedInBatches() throws Exception {
+        launch(true);
+        Object bridge = shadowOf(webView()).getJavascriptInterface("AndroidApp");
+        assertNotNull(bridge);
+
+        Method recordAnswer = bridge.getClass().getMethod("recordAnswer", String.class);
+        Method getPendingSyncCount = bridge.getClass().getMethod("getPendingSyncCount");
+        recordAnswer.setAccessible(true);
+        getPendingSyncCount.setAccessible(true);
+
+        for (int i = 0; i < ANSWERS; i++) {
+            recordAnswer.invoke(bridge, "{\"questionId\":" + i + ",\"subject\":\"physics\",\"correct\":true}");
+        }
+        // Recording an answer is a local write, never a request
+        assertEquals(0, journalRequests());
+        assertEquals(ANSWERS, getPendingSyncCount.invoke(bridge));
+
+        fireNetworkChange(controller.get(), true);
+        for (int i = 0; i < MAX_SYNC_POLLS && (Integer) getPendingSyncCount.invoke(bridge) > 0; i++) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(0, getPendingSyncCount.invoke(bridge));
+        int expectedBatches = (ANSWERS + AnswerJournal.SYNC_BATCH_SIZE - 1) / AnswerJournal.SYNC_BATCH_SIZE;
+        assertEquals(expectedBatches, journalRequests());
+        assertTrue("sync used " + origin.bytesReceived() + " bytes", origin.bytesReceived() < SYNC_BYTES_BUDGET);
+    }
+}
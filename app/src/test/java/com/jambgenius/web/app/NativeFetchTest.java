@@ -0,0 +1,162 @@
+package com.jambgenius.web.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+@RunWith(RobolectricTestRunner.class)
+public class NativeFetchTest {
+    private static final int CONCURRENT_CALLERS = 10;
+
+    @Rule
+    public TemporaryFolder cacheDir = new TemporaryFolder();
+
+    private LocalOrigin origin;
+    private NativeFetch fetch;
+    private final Map<String, String> results = new ConcurrentHashMap<>();
+    private CountDownLatch pending;
+    private final NativeFetch.Sink sink = new NativeFetch.Sink() {
+        @Override
+        public void resolve(String requestId, String resultJson) {
+            results.put(requestId, resultJson);
+            pending.countDown();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        origin = new LocalOrigin();
+        OkHttpClient client = new OkHttpClient.Builder()
+            .cache(new Cache(cacheDir.getRoot(), 1024 * 1024))
+            .build();
+        fetch = new NativeFetch(client, origin.url("/"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fetch.shutdown();
+        origin.close();
+    }
+
+    private void await() throws InterruptedException {
+        assertTrue("requests did not finish", pending.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void coalescesIdenticalInFlightGets() throws Exception {
+        // Slow link so every caller arrives while the first request is still in flight
+        origin.setProfile(LocalOrigin.Profile.UMTS_3G);
+        pending = new CountDownLatch(CONCURRENT_CALLERS);
+
+        for (int i = 0; i < CONCURRENT_CALLERS; i++) {
+            fetch.fetch("r" + i, "GET", "/api/user/profile", "{\"Accept\":\"application/json\"}", null, sink);
+        }
+        await();
+
+        assertEquals(1, origin.requestCount());
+        for (int i = 0; i < CONCURRENT_CALLERS; i++) {
+            JSONObject result = new JSONObject(results.get("r" + i));
+            assertEquals(200, result.getInt("status"));
+        }
+        JSONObject endpoint = new JSONObject(fetch.getStats()).getJSONObject("endpoints").getJSONObject("GET /api/user/profile");
+        assertEquals(1, endpoint.getInt("calls"));
+        assertEquals(CONCURRENT_CALLERS - 1, endpoint.getInt("deduped"));
+    }
+
+    @Test
+    public void servesFreshResponsesFromCache() throws Exception {
+        origin.setRoute(new LocalOrigin.Route() {
+            @Override
+            public MockResponse respond(RecordedRequest request) {
+                return new MockResponse().setResponseCode(200)
+                    .setHeader("Cache-Control", "max-age=60")
+                    .setBody("{\"subject\":\"physics\"}");
+            }
+        });
+
+        pending = new CountDownLatch(1);
+        fetch.fetch("first", "GET", "/api/questions/42", null, null, sink);
+        await();
+        pending = new CountDownLatch(1);
+        fetch.fetch("second", "GET", "/api/questions/42", null, null, sink);
+        await();
+
+        assertEquals(1, origin.requestCount());
+        assertTrue(new JSONObject(results.get("second")).getBoolean("cached"));
+        JSONObject endpoint = new JSONObject(fetch.getStats()).getJSONObject("endpoints").getJSONObject("GET /api/questions/:id");
+        assertEquals(1, endpoint.getInt("cacheHits"));
+    }
+
+    @Test
+    public void resolvesABatchInRequestOrder() throws Exception {
+        origin.setRoute(new LocalOrigin.Route() {
+            @Override
+            public MockResponse respond(RecordedRequest request) {
+                return new MockResponse().setResponseCode(200).setBody(request.getPath());
+            }
+        });
+        pending = new CountDownLatch(1);
+
+        JSONArray batch = new JSONArray()
+            .put(new JSONObject().put("url", "/api/a"))
+            .put(new JSONObject().put("url", "/api/b"))
+            .put(new JSONObject().put("method", "POST").put("url", "/api/c").put("body", "{}"));
+        fetch.fetchBatch("batch", batch.toString(), sink);
+        await();
+
+        JSONArray responses = new JSONArray(results.get("batch"));
+        assertEquals(3, responses.length());
+        assertEquals("/api/a", responses.getJSONObject(0).getString("body"));
+        assertEquals("/api/b", responses.getJSONObject(1).getString("body"));
+        assertEquals("/api/c", responses.getJSONObject(2).getString("body"));
+        assertEquals(3, origin.requestCount());
+    }
+
+    @Test
+    public void handlesShimMessages() throws Exception {
+        pending = new CountDownLatch(2);
+
+        fetch.onMessage(new JSONObject().put("type", "fetch").put("id", "nf1")
+            .put("method", "GET").put("url", "/api/a").put("headers", new JSONObject()).toString(), sink);
+        fetch.onMessage(new JSONObject().put("type", "batch").put("id", "nf2")
+            .put("requests", new JSONArray().put(new JSONObject().put("url", "/api/b"))).toString(), sink);
+        fetch.onMessage("not json", sink);
+        await();
+
+        assertEquals(200, new JSONObject(results.get("nf1")).getInt("status"));
+        assertEquals(1, new JSONArray(results.get("nf2")).length());
+        assertEquals(2, origin.requestCount());
+    }
+
+    @Test
+    public void refusesOtherOrigins() throws Exception {
+        pending = new CountDownLatch(1);
+
+        fetch.fetch("evil", "GET", "https://example.com/steal", null, null, sink);
+        await();
+
+        JSONObject result = new JSONObject(results.get("evil"));
+        assertFalse(result.getBoolean("ok"));
+        assertEquals(0, origin.requestCount());
+    }
+}
@@ -0,0 +1,112 @@
+package com.jambgenius.web.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.webkit.WebView;
+import android.widget.FrameLayout;
+import androidx.test.core.app.ApplicationProvider;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class TabManagerTest {
+    private Context context;
+    private FrameLayout container;
+    private WebView mainWebView;
+    private TabManager tabs;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        container = new FrameLayout(context);
+        mainWebView = new WebView(context);
+        container.addView(mainWebView);
+        tabs = new TabManager(context, container, new TabManager.Host() {
+            @Override
+            public void configureTab(WebView webView) {
+            }
+
+            @Override
+            public boolean handleExternalUrl(String url) {
+                return false;
+            }
+        });
+    }
+
+    private boolean requestWindow(boolean isUserGesture) {
+        WebView.WebViewTransport transport = mainWebView.new WebViewTransport();
+        Message message = Message.obtain(new Handler(Looper.getMainLooper()), 0, transport);
+        return tabs.openWindow(isUserGesture, message);
+    }
+
+    private void openWindow() {
+        assertTrue(requestWindow(true));
+    }
+
+    private JSONObject stats() throws Exception {
+        return new JSONObject(tabs.getStats());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedTabsBeyondTheCap() throws Exception {
+        for (int i = 0; i < TabManager.MAX_LIVE_TABS + 2; i++) {
+            openWindow();
+        }
+
+        JSONObject stats = stats();
+        assertEquals(TabManager.MAX_LIVE_TABS + 2, stats.getInt("open"));
+        assertEquals(TabManager.MAX_LIVE_TABS, stats.getInt("live"));
+        assertEquals(2, stats.getInt("evictions"));
+        // Main WebView plus the live tabs
+        assertEquals(TabManager.MAX_LIVE_TABS + 1, container.getChildCount());
+        assertSame(mainWebView, container.getChildAt(0));
+    }
+
+    @Test
+    public void backClosesTabsAndRestoresEvictedOnes() throws Exception {
+        for (int i = 0; i < TabManager.MAX_LIVE_TABS + 1; i++) {
+            openWindow();
+        }
+
+        int open = TabManager.MAX_LIVE_TABS + 1;
+        while (tabs.onBackPressed()) {
+            open--;
+            assertEquals(open, stats().getInt("open"));
+        }
+
+        assertFalse(tabs.hasTabs());
+        assertEquals(1, stats().getInt("evictions"));
+        assertEquals(1, stats().getInt("restores"));
+        assertEquals(1, container.getChildCount());
+    }
+
+    @Test
+    public void refusesWindowsWithoutAUserGesture() throws Exception {
+        openWindow();
+
+        assertFalse(requestWindow(false));
+        assertEquals(1, stats().getInt("open"));
+    }
+
+    @Test
+    public void refusesWindowsBeyondMaxTabsInsteadOfDroppingOne() throws Exception {
+        for (int i = 0; i < TabManager.MAX_TABS; i++) {
+            openWindow();
+        }
+
+        assertFalse(requestWindow(true));
+        JSONObject stats = stats();
+        assertEquals(TabManager.MAX_TABS, stats.getInt("open"));
+        assertEquals(1, stats.getJSONArray("tabs").getJSONObject(0).getInt("id"));
+    }
+}